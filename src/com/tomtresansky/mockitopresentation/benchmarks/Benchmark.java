@@ -0,0 +1,161 @@
+package com.tomtresansky.mockitopresentation.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/*
+ * A tiny, dependency-free micro-benchmark harness.
+ *
+ * There's no JMH on the classpath of this project (just the jars in lib/), so
+ * this does the minimum needed to get honest per-call numbers: a few warm up
+ * rounds so the JIT has compiled the code under test, then several measured
+ * rounds, reporting the median time per operation and the bytes allocated per
+ * operation by the benchmarking thread.
+ *
+ * Subclasses implement runOnce() - whatever it returns is folded into a sink
+ * so the JIT can't throw the work away.
+ */
+public abstract class Benchmark {
+  private static final int WARMUP_ROUNDS =
+      Integer.getInteger("benchmark.warmupRounds", 5);
+  private static final int MEASURED_ROUNDS =
+      Integer.getInteger("benchmark.measuredRounds", 10);
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  /*
+   * Results of every operation end up here, keeps the work "live".
+   */
+  private static volatile int sink;
+
+  private final String name;
+  private final int opsPerRound;
+
+  protected Benchmark(final String name, final int opsPerRound) {
+    this.name = name;
+    this.opsPerRound = opsPerRound;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /*
+   * Called before every round, outside of the timed region. Mocks remember
+   * every invocation made on them, so most benchmarks use this to start each
+   * round with a fresh mock rather than an ever-growing invocation log.
+   */
+  protected void setUpRound() throws Exception {
+    // nothing by default
+  }
+
+  /*
+   * The operation being measured.
+   */
+  protected abstract Object runOnce() throws Exception;
+
+  public final Result run() throws Exception {
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      runRound();
+    }
+
+    final double[] nanosPerOp = new double[MEASURED_ROUNDS];
+    final double[] bytesPerOp = new double[MEASURED_ROUNDS];
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      final long[] measured = runRound();
+      nanosPerOp[round] = (double) measured[0] / opsPerRound;
+      bytesPerOp[round] = measured[1] < 0
+          ? Double.NaN
+          : (double) measured[1] / opsPerRound;
+    }
+
+    return new Result(name, median(nanosPerOp), median(bytesPerOp));
+  }
+
+  /*
+   * Runs one round, returning {elapsed nanos, allocated bytes (or -1)} of the
+   * timed part only.
+   */
+  private long[] runRound() throws Exception {
+    setUpRound();
+
+    int local = 0;
+    final long bytesBefore = allocatedBytes();
+    final long start = System.nanoTime();
+    for (int i = 0; i < opsPerRound; i++) {
+      final Object result = runOnce();
+      local += (result == null ? 0 : System.identityHashCode(result));
+    }
+    final long elapsed = System.nanoTime() - start;
+    final long bytesAfter = allocatedBytes();
+
+    sink += local;
+    return new long[] { elapsed, bytesBefore < 0 ? -1 : bytesAfter - bytesBefore };
+  }
+
+  /*
+   * Bytes allocated so far by the current thread, or -1 when the JVM can't
+   * tell us (only HotSpot style JVMs expose this).
+   */
+  static long allocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      final com.sun.management.ThreadMXBean hotspotThreads =
+          (com.sun.management.ThreadMXBean) THREADS;
+      if (hotspotThreads.isThreadAllocatedMemorySupported()
+          && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+        return hotspotThreads.getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static double median(final double[] values) {
+    final double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  /*
+   * Runs each benchmark in turn, printing a line per result.
+   */
+  public static void runAll(final Benchmark... benchmarks) throws Exception {
+    for (final Benchmark benchmark : benchmarks) {
+      System.out.println(benchmark.run());
+    }
+  }
+
+  /*
+   * The outcome of a benchmark: median nanos and bytes per operation.
+   */
+  public static final class Result {
+    private final String name;
+    private final double nanosPerOp;
+    private final double bytesPerOp;
+
+    Result(final String name, final double nanosPerOp, final double bytesPerOp) {
+      this.name = name;
+      this.nanosPerOp = nanosPerOp;
+      this.bytesPerOp = bytesPerOp;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public double getNanosPerOp() {
+      return nanosPerOp;
+    }
+
+    public double getBytesPerOp() {
+      return bytesPerOp;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-50s %12.1f ns/op %12.1f B/op",
+          name, nanosPerOp, bytesPerOp);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package com.tomtresansky.mockitopresentation.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The multi-threaded sibling of Benchmark: runs the operation on several
+ * threads at once for a fixed time, and reports the throughput, the median
+ * and 99th percentile latency of a single operation, and how often (and for
+ * how long) the threads were blocked on a lock.
+ *
+ * Each thread count gets a fresh setUp(), so e.g. a new mock which hasn't
+ * recorded the previous run's invocations.
+ */
+public abstract class ConcurrentBenchmark {
+  private static final long DURATION_MILLIS = Long.getLong("benchmark.durationMillis", 500);
+
+  /*
+   * Latencies kept per thread, more operations than this are only counted.
+   */
+  private static final int MAX_SAMPLES = 1 << 17;
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private static volatile int sink;
+
+  private final String name;
+
+  protected ConcurrentBenchmark(final String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /*
+   * Called before each run, outside of the timed region.
+   */
+  protected void setUp() throws Exception {
+    // nothing by default
+  }
+
+  /*
+   * The operation being measured, called from all the threads at once.
+   */
+  protected abstract Object runOnce() throws Exception;
+
+  public final Result run(final int threadCount) throws Exception {
+    setUp();
+    if (THREADS.isThreadContentionMonitoringSupported()) {
+      THREADS.setThreadContentionMonitoringEnabled(true);
+    }
+
+    final Worker[] workers = new Worker[threadCount];
+    final CountDownLatch ready = new CountDownLatch(threadCount);
+    final CountDownLatch start = new CountDownLatch(1);
+    final long[] deadline = new long[1];
+    for (int i = 0; i < threadCount; i++) {
+      workers[i] = new Worker(ready, start, deadline);
+      workers[i].setName(name + "-" + i);
+      workers[i].start();
+    }
+
+    ready.await();
+    final long startNanos = System.nanoTime();
+    deadline[0] = startNanos + TimeUnit.MILLISECONDS.toNanos(DURATION_MILLIS);
+    start.countDown();
+
+    long operations = 0;
+    long blockedCount = 0;
+    long blockedMillis = 0;
+    int samples = 0;
+    for (final Worker worker : workers) {
+      worker.join();
+      if (worker.failure != null) {
+        throw new IllegalStateException("Benchmark failed", worker.failure);
+      }
+      operations += worker.operations;
+      blockedCount += worker.blockedCount;
+      blockedMillis += worker.blockedMillis;
+      samples += worker.samples;
+    }
+    final long elapsed = System.nanoTime() - startNanos;
+
+    final long[] latencies = new long[samples];
+    int offset = 0;
+    for (final Worker worker : workers) {
+      System.arraycopy(worker.latencies, 0, latencies, offset, worker.samples);
+      offset += worker.samples;
+    }
+    Arrays.sort(latencies);
+
+    return new Result(name, threadCount, operations * 1e9 / elapsed,
+        percentile(latencies, 0.50), percentile(latencies, 0.99),
+        blockedCount, blockedMillis);
+  }
+
+  private static long percentile(final long[] sorted, final double fraction) {
+    return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, sorted.length * fraction)];
+  }
+
+  /*
+   * Runs each benchmark with each thread count, printing a line per result.
+   * The first run of each benchmark is a warm up, and isn't printed.
+   */
+  public static void runAll(final int[] threadCounts, final ConcurrentBenchmark... benchmarks)
+      throws Exception {
+    for (final ConcurrentBenchmark benchmark : benchmarks) {
+      benchmark.run(threadCounts[threadCounts.length - 1]);
+      for (final int threadCount : threadCounts) {
+        System.out.println(benchmark.run(threadCount));
+      }
+    }
+  }
+
+  private final class Worker extends Thread {
+    private final CountDownLatch ready;
+    private final CountDownLatch start;
+    private final long[] deadline;
+
+    final long[] latencies = new long[MAX_SAMPLES];
+    int samples;
+    long operations;
+    long blockedCount;
+    long blockedMillis;
+    Throwable failure;
+
+    Worker(final CountDownLatch ready, final CountDownLatch start, final long[] deadline) {
+      this.ready = ready;
+      this.start = start;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+      try {
+        ready.countDown();
+        start.await();
+
+        final long end = deadline[0];
+        int local = 0;
+        long now = System.nanoTime();
+        while (now < end) {
+          final Object result = runOnce();
+          final long after = System.nanoTime();
+          if (samples < MAX_SAMPLES) {
+            latencies[samples++] = after - now;
+          }
+          operations++;
+          local += (result == null ? 0 : System.identityHashCode(result));
+          now = after;
+        }
+        sink += local;
+
+        final ThreadInfo info = THREADS.getThreadInfo(getId());
+        blockedCount = info.getBlockedCount();
+        blockedMillis = Math.max(0, info.getBlockedTime());
+      } catch (final Throwable e) {
+        failure = e;
+      }
+    }
+  }
+
+  /*
+   * The outcome of one run of a concurrent benchmark.
+   */
+  public static final class Result {
+    private final String name;
+    private final int threads;
+    private final double operationsPerSecond;
+    private final long medianNanos;
+    private final long p99Nanos;
+    private final long blockedCount;
+    private final long blockedMillis;
+
+    Result(final String name, final int threads, final double operationsPerSecond,
+        final long medianNanos, final long p99Nanos, final long blockedCount,
+        final long blockedMillis) {
+      this.name = name;
+      this.threads = threads;
+      this.operationsPerSecond = operationsPerSecond;
+      this.medianNanos = medianNanos;
+      this.p99Nanos = p99Nanos;
+      this.blockedCount = blockedCount;
+      this.blockedMillis = blockedMillis;
+    }
+
+    public double getOperationsPerSecond() {
+      return operationsPerSecond;
+    }
+
+    public long getP99Nanos() {
+      return p99Nanos;
+    }
+
+    public long getBlockedCount() {
+      return blockedCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-40s %3d threads %,12.0f ops/s %9.1f us p50 %9.1f us p99"
+          + " %,10d blocked %,8d ms blocked",
+          name, threads, operationsPerSecond, medianNanos / 1e3, p99Nanos / 1e3,
+          blockedCount, blockedMillis);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package com.tomtresansky.mockitopresentation.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.notification.RunListener;
+import org.powermock.core.IndicateReloadClass;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+
+/*
+ * Cold start cost of the different JUnit runners used in the examples.
+ *
+ * Each test class is run in its own freshly forked JVM (so nothing is already
+ * loaded or JIT compiled), and the child reports how long it took from JVM
+ * start until the first test began, and how many classes had been loaded by
+ * then. Comparing the PowerMockRunner classes to the MockitoJUnitRunner one
+ * shows what the PowerMock classloader and its bytecode rewriting costs, and
+ * dividing by the number of classes named in @PrepareForTest gives a rough cost
+ * per prepared class.
+ *
+ * Run with the test classes to compare as arguments, or none for the defaults.
+ */
+public final class RunnerStartupBenchmark {
+  private static final String PREFIX = "com.tomtresansky.mockitopresentation.";
+
+  private static final String[] DEFAULT_TEST_CLASSES = {
+      PREFIX + "example08.mockinjection.InjectMocksAnnotationExample",
+      PREFIX + "example09.mockfinals.MockFinalClassesWithPowerMock",
+      PREFIX + "example09.mockfinals.MockFinalMethodsWithPowerMock",
+      PREFIX + "example10.mocknastyclass.DemonstrateTestingWithPowerMock" };
+
+  private static final int FORKS = Integer.getInteger("benchmark.forks", 5);
+
+  /*
+   * The child JVM prints a single line starting with this, everything else it
+   * prints is the tests' own console output.
+   */
+  private static final String MARKER = "STARTUP ";
+
+  private RunnerStartupBenchmark() {
+    // only run from main
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final List<String> testClasses = args.length == 0
+        ? Arrays.asList(DEFAULT_TEST_CLASSES)
+        : Arrays.asList(args);
+
+    System.out.println(String.format("%-35s %10s %16s %10s %14s",
+        "Test class", "Prepared", "Time to 1st test", "Classes", "ms/prepared"));
+
+    Long baselineMillis = null;
+    for (final String testClass : testClasses) {
+      final long[] millis = new long[FORKS];
+      final long[] classes = new long[FORKS];
+      for (int fork = 0; fork < FORKS; fork++) {
+        final long[] measurement = fork(testClass);
+        millis[fork] = measurement[0];
+        classes[fork] = measurement[1];
+      }
+
+      final long medianMillis = median(millis);
+      final int prepared = countPreparedClasses(Class.forName(testClass));
+      if (prepared == 0 && baselineMillis == null) {
+        // The first non-PowerMock class is what everything else is compared to
+        baselineMillis = medianMillis;
+      }
+
+      final String perPrepared = (prepared == 0 || baselineMillis == null)
+          ? "-"
+          : String.format("%.1f",
+              (double) (medianMillis - baselineMillis) / prepared);
+      System.out.println(String.format("%-35s %10d %13d ms %10d %14s",
+          Class.forName(testClass).getSimpleName(), prepared, medianMillis,
+          median(classes), perPrepared));
+    }
+  }
+
+  /*
+   * Runs the test class in a new JVM, returning {millis to first test, classes
+   * loaded at first test}.
+   */
+  private static long[] fork(final String testClass) throws Exception {
+    final String java = System.getProperty("java.home")
+        + File.separator + "bin" + File.separator + "java";
+    final ProcessBuilder builder = new ProcessBuilder(
+        java, "-cp", System.getProperty("java.class.path"),
+        Probe.class.getName(), testClass);
+    builder.redirectErrorStream(true);
+
+    final Process process = builder.start();
+    final BufferedReader output = new BufferedReader(
+        new InputStreamReader(process.getInputStream()));
+    long[] measurement = null;
+    try {
+      String line;
+      while ((line = output.readLine()) != null) {
+        if (line.startsWith(MARKER)) {
+          final String[] fields = line.substring(MARKER.length()).split(" ");
+          measurement = new long[] {
+              Long.parseLong(fields[0]), Long.parseLong(fields[1]) };
+        }
+      }
+    } finally {
+      output.close();
+    }
+    process.waitFor();
+
+    if (measurement == null) {
+      throw new IllegalStateException("No test was started for " + testClass);
+    }
+    return measurement;
+  }
+
+  /*
+   * Distinct classes PowerMock will modify through its mock classloader for
+   * this test (the annotations' default values are placeholders, not classes).
+   */
+  private static int countPreparedClasses(final Class<?> testClass) {
+    final Set<String> prepared = new HashSet<String>();
+
+    final PrepareForTest prepareForTest =
+        testClass.getAnnotation(PrepareForTest.class);
+    if (prepareForTest != null) {
+      for (final Class<?> clazz : prepareForTest.value()) {
+        if (clazz != IndicateReloadClass.class) {
+          prepared.add(clazz.getName());
+        }
+      }
+      prepared.addAll(Arrays.asList(prepareForTest.fullyQualifiedNames()));
+    }
+
+    final SuppressStaticInitializationFor suppressStatic =
+        testClass.getAnnotation(SuppressStaticInitializationFor.class);
+    if (suppressStatic != null) {
+      prepared.addAll(Arrays.asList(suppressStatic.value()));
+    }
+
+    prepared.remove("");
+    return prepared.size();
+  }
+
+  private static long median(final long[] values) {
+    final long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  /*
+   * Entry point of the forked JVM: runs a single test class and reports on
+   * the first test to start.
+   */
+  public static final class Probe {
+    private Probe() {
+      // only run from main
+    }
+
+    public static void main(final String[] args) throws Exception {
+      final JUnitCore core = new JUnitCore();
+      final List<String> report = new ArrayList<String>();
+      core.addListener(new RunListener() {
+        @Override
+        public void testStarted(final Description description) {
+          if (report.isEmpty()) {
+            final long millis = System.currentTimeMillis()
+                - ManagementFactory.getRuntimeMXBean().getStartTime();
+            final long classes = ManagementFactory.getClassLoadingMXBean()
+                .getTotalLoadedClassCount();
+            report.add(MARKER + millis + " " + classes);
+          }
+        }
+      });
+
+      core.run(Class.forName(args[0]));
+
+      for (final String line : report) {
+        System.out.println(line);
+      }
+      System.exit(0);
+    }
+  }
+}
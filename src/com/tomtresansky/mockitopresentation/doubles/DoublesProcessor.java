@@ -0,0 +1,400 @@
+package com.tomtresansky.mockitopresentation.doubles;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/*
+ * Writes the stub, mock and spy for each interface marked @GenerateDoubles.
+ *
+ * They follow the hand written Megameter doubles in example01:
+ *
+ *   - the stub returns a fixed result from every method, set with
+ *     setXxxResult() (Java's default value until then)
+ *   - the mock does the same, but only for methods switched on with
+ *     setCanXxx(true), anything else fails with an AssertionError
+ *   - the spy returns fixed results too, and records every call in a
+ *     CallRecorder, for getCalls() to hand back (it throws once more calls
+ *     were made than the spy's capacity). Methods with several arguments
+ *     record them as an Object[], single primitives get boxed.
+ *
+ * Overloaded methods get numbered: the second measure() is set up with
+ * setMeasure2Result() and so on, and the spy records its calls as
+ * measure2(). Generic interfaces aren't supported.
+ */
+@SupportedAnnotationTypes("com.tomtresansky.mockitopresentation.doubles.GenerateDoubles")
+public final class DoublesProcessor extends AbstractProcessor {
+  private static final int DEFAULT_SPY_CAPACITY = 1024;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations,
+      final RoundEnvironment roundEnv) {
+    for (final Element element : roundEnv.getElementsAnnotatedWith(GenerateDoubles.class)) {
+      if (element.getKind() != ElementKind.INTERFACE) {
+        error(element, "@GenerateDoubles only works on interfaces");
+      } else if (!((TypeElement) element).getTypeParameters().isEmpty()) {
+        error(element, "@GenerateDoubles doesn't support generic interfaces");
+      } else {
+        generate((TypeElement) element);
+      }
+    }
+    return true;
+  }
+
+  private void error(final Element element, final String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+
+  private void generate(final TypeElement type) {
+    final List<DoubledMethod> methods = methodsOf(type);
+    final String packageName = processingEnv.getElementUtils()
+        .getPackageOf(type).getQualifiedName().toString();
+    for (final Kind kind : Kind.values()) {
+      final String simpleName = baseName(type) + kind.suffix;
+      final String qualifiedName = packageName.isEmpty()
+          ? simpleName
+          : packageName + "." + simpleName;
+      try {
+        final PrintWriter out = new PrintWriter(processingEnv.getFiler()
+            .createSourceFile(qualifiedName, type).openWriter());
+        try {
+          new DoubleWriter(out, type, simpleName, kind, methods).write(packageName);
+        } finally {
+          out.close();
+        }
+      } catch (final IOException e) {
+        error(type, "Couldn't write " + simpleName + ": " + e);
+      }
+    }
+  }
+
+  /*
+   * DoctorTest.Megameter becomes DoctorTest_Megameter.
+   */
+  private static String baseName(final TypeElement type) {
+    String name = type.getSimpleName().toString();
+    for (Element enclosing = type.getEnclosingElement();
+        enclosing instanceof TypeElement;
+        enclosing = enclosing.getEnclosingElement()) {
+      name = enclosing.getSimpleName() + "_" + name;
+    }
+    return name;
+  }
+
+  /*
+   * The abstract methods to implement, inherited ones included, each once.
+   */
+  private List<DoubledMethod> methodsOf(final TypeElement type) {
+    final Map<String, ExecutableElement> bySignature =
+        new LinkedHashMap<String, ExecutableElement>();
+    for (final ExecutableElement method : ElementFilter.methodsIn(
+        processingEnv.getElementUtils().getAllMembers(type))) {
+      if (method.getModifiers().contains(Modifier.ABSTRACT) && !isObjectMethod(method)) {
+        final String signature = signatureOf(method);
+        if (!bySignature.containsKey(signature)) {
+          bySignature.put(signature, method);
+        }
+      }
+    }
+
+    final Map<String, Integer> overloads = new HashMap<String, Integer>();
+    final List<DoubledMethod> methods = new ArrayList<DoubledMethod>();
+    for (final ExecutableElement method : bySignature.values()) {
+      final String name = method.getSimpleName().toString();
+      final Integer seen = overloads.get(name);
+      overloads.put(name, seen == null ? 1 : seen + 1);
+      methods.add(new DoubledMethod(method, seen == null ? name : name + (seen + 1),
+          methods.size(), processingEnv.getTypeUtils().erasure(method.getReturnType())));
+    }
+    return methods;
+  }
+
+  private String signatureOf(final ExecutableElement method) {
+    final StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+    for (final VariableElement parameter : method.getParameters()) {
+      signature.append(processingEnv.getTypeUtils().erasure(parameter.asType())).append(',');
+    }
+    return signature.append(')').toString();
+  }
+
+  private static boolean isObjectMethod(final ExecutableElement method) {
+    final String name = method.getSimpleName().toString();
+    final int arity = method.getParameters().size();
+    return (name.equals("equals") && arity == 1)
+        || (name.equals("hashCode") && arity == 0)
+        || (name.equals("toString") && arity == 0);
+  }
+
+  private enum Kind {
+    STUB("Stub", "A stub: returns fixed results."),
+    MOCK("Mock", "A mock: returns fixed results, only from the methods allowed."),
+    SPY("Spy", "A spy: returns fixed results, and records the calls made.");
+
+    final String suffix;
+    final String description;
+
+    private Kind(final String suffix, final String description) {
+      this.suffix = suffix;
+      this.description = description;
+    }
+  }
+
+  private static final class DoubledMethod {
+    final ExecutableElement method;
+    final String memberName;
+    final int id;
+    final TypeMirror resultType;
+
+    DoubledMethod(final ExecutableElement method, final String memberName, final int id,
+        final TypeMirror erasedReturnType) {
+      this.method = method;
+      this.memberName = memberName;
+      this.id = id;
+      this.resultType = method.getTypeParameters().isEmpty()
+          ? method.getReturnType()
+          : erasedReturnType;
+    }
+
+    boolean isVoid() {
+      return method.getReturnType().getKind() == TypeKind.VOID;
+    }
+
+    /*
+     * Generic methods keep their result as the erasure of the return type,
+     * and cast it on the way out.
+     */
+    boolean needsCast() {
+      return !resultType.toString().equals(method.getReturnType().toString());
+    }
+
+    String capitalized() {
+      return Character.toUpperCase(memberName.charAt(0)) + memberName.substring(1);
+    }
+
+    String constantName() {
+      final StringBuilder constant = new StringBuilder();
+      for (final char c : memberName.toCharArray()) {
+        if (Character.isUpperCase(c)) {
+          constant.append('_');
+        }
+        constant.append(Character.toUpperCase(c));
+      }
+      return constant.toString();
+    }
+  }
+
+  private static final class DoubleWriter {
+    private final PrintWriter out;
+    private final TypeElement type;
+    private final String simpleName;
+    private final Kind kind;
+    private final List<DoubledMethod> methods;
+
+    DoubleWriter(final PrintWriter out, final TypeElement type, final String simpleName,
+        final Kind kind, final List<DoubledMethod> methods) {
+      this.out = out;
+      this.type = type;
+      this.simpleName = simpleName;
+      this.kind = kind;
+      this.methods = methods;
+    }
+
+    void write(final String packageName) {
+      if (!packageName.isEmpty()) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("/*");
+      out.println(" * Generated by " + DoublesProcessor.class.getSimpleName() + " from "
+          + type.getQualifiedName() + ", don't edit.");
+      out.println(" *");
+      out.println(" * " + kind.description);
+      out.println(" */");
+      out.println((isPublic(type) ? "public " : "") + "final class " + simpleName
+          + " implements " + type.getQualifiedName() + " {");
+
+      if (kind == Kind.SPY) {
+        writeSpyFields();
+      }
+      for (final DoubledMethod method : methods) {
+        if (kind == Kind.MOCK) {
+          out.println("  private boolean can" + method.capitalized() + ";");
+        }
+        if (!method.isVoid()) {
+          out.println("  private " + method.resultType + " " + method.memberName + "Result;");
+        }
+      }
+
+      for (final DoubledMethod method : methods) {
+        writeSetters(method);
+        writeMethod(method);
+      }
+      out.println("}");
+    }
+
+    private static boolean isPublic(final Element type) {
+      for (Element element = type; element instanceof TypeElement;
+          element = element.getEnclosingElement()) {
+        if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void writeSpyFields() {
+      final String recorder = "com.tomtresansky.mockitopresentation.spies.CallRecorder";
+      for (final DoubledMethod method : methods) {
+        out.println("  private static final int " + method.constantName() + " = "
+            + method.id + ";");
+      }
+      out.println();
+      out.println("  private final " + recorder + "<Object> calls;");
+      out.println();
+      out.println("  public " + simpleName + "() {");
+      out.println("    this(" + DEFAULT_SPY_CAPACITY + ");");
+      out.println("  }");
+      out.println();
+      out.println("  public " + simpleName + "(final int capacity) {");
+      final StringBuilder names = new StringBuilder();
+      for (final DoubledMethod method : methods) {
+        names.append(", \"").append(method.memberName).append('"');
+      }
+      out.println("    this.calls = new " + recorder + "<Object>(capacity" + names + ");");
+      out.println("  }");
+      out.println();
+      out.println("  public java.util.List<" + recorder + ".Call<Object>> getCalls() {");
+      out.println("    return this.calls.getCalls();");
+      out.println("  }");
+      out.println();
+    }
+
+    private void writeSetters(final DoubledMethod method) {
+      if (kind == Kind.MOCK) {
+        out.println();
+        out.println("  public void setCan" + method.capitalized() + "(final boolean value) {");
+        out.println("    this.can" + method.capitalized() + " = value;");
+        out.println("  }");
+      }
+      if (!method.isVoid()) {
+        out.println();
+        out.println("  public void set" + method.capitalized() + "Result(final "
+            + method.resultType + " result) {");
+        out.println("    this." + method.memberName + "Result = result;");
+        out.println("  }");
+      }
+    }
+
+    private void writeMethod(final DoubledMethod doubled) {
+      final ExecutableElement method = doubled.method;
+      out.println();
+      if (doubled.needsCast()) {
+        out.println("  @SuppressWarnings(\"unchecked\")");
+      }
+      out.println("  @Override");
+      out.println("  public " + typeParameters(method) + method.getReturnType() + " "
+          + method.getSimpleName() + "(" + parameters(method) + ") {");
+
+      if (kind == Kind.MOCK) {
+        out.println("    if (!this.can" + doubled.capitalized() + ") {");
+        out.println("      throw new AssertionError(\"Shouldn't be calling "
+            + method.getSimpleName() + "!\");");
+        out.println("    }");
+      } else if (kind == Kind.SPY) {
+        out.println("    this.calls.record(" + doubled.constantName() + ", "
+            + recordedArg(method) + ");");
+      }
+
+      if (!doubled.isVoid()) {
+        out.println("    return " + (doubled.needsCast() ? "(" + method.getReturnType() + ") " : "")
+            + "this." + doubled.memberName + "Result;");
+      }
+      out.println("  }");
+    }
+
+    private static String typeParameters(final ExecutableElement method) {
+      if (method.getTypeParameters().isEmpty()) {
+        return "";
+      }
+
+      final List<String> declared = new ArrayList<String>();
+      for (final TypeParameterElement parameter : method.getTypeParameters()) {
+        final List<String> bounds = new ArrayList<String>();
+        for (final TypeMirror bound : parameter.getBounds()) {
+          if (!bound.toString().equals("java.lang.Object")) {
+            bounds.add(bound.toString());
+          }
+        }
+        declared.add(parameter.getSimpleName()
+            + (bounds.isEmpty() ? "" : " extends " + join(bounds, " & ")));
+      }
+      return "<" + join(declared, ", ") + "> ";
+    }
+
+    private static String parameters(final ExecutableElement method) {
+      final List<String> declared = new ArrayList<String>();
+      final List<? extends VariableElement> parameters = method.getParameters();
+      for (int i = 0; i < parameters.size(); i++) {
+        String parameterType = parameters.get(i).asType().toString();
+        if (method.isVarArgs() && i == parameters.size() - 1) {
+          parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+        }
+        declared.add("final " + parameterType + " " + parameters.get(i).getSimpleName());
+      }
+      return join(declared, ", ");
+    }
+
+    private static String recordedArg(final ExecutableElement method) {
+      final List<? extends VariableElement> parameters = method.getParameters();
+      if (parameters.isEmpty()) {
+        return "null";
+      }
+      if (parameters.size() == 1) {
+        return parameters.get(0).getSimpleName().toString();
+      }
+
+      final List<String> names = new ArrayList<String>();
+      for (final VariableElement parameter : parameters) {
+        names.add(parameter.getSimpleName().toString());
+      }
+      return "new Object[] { " + join(names, ", ") + " }";
+    }
+
+    private static String join(final List<String> parts, final String separator) {
+      final StringBuilder joined = new StringBuilder();
+      for (final String part : parts) {
+        if (joined.length() > 0) {
+          joined.append(separator);
+        }
+        joined.append(part);
+      }
+      return joined.toString();
+    }
+  }
+}
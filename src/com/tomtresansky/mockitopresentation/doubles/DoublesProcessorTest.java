@@ -0,0 +1,202 @@
+package com.tomtresansky.mockitopresentation.doubles;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Runs the processor through the system Java compiler, then loads and uses
+ * what it wrote - so these need a JDK, not just a JRE.
+ */
+public class DoublesProcessorTest {
+  private static final String PACKAGE = "com.tomtresansky.mockitopresentation.doubles.sample";
+
+  private static final String DOCTOR_TEST = "package " + PACKAGE + ";\n"
+      + "import com.tomtresansky.mockitopresentation.doubles.GenerateDoubles;\n"
+      + "public class DoctorTest {\n"
+      + "  public static class Person {}\n"
+      + "  public interface Thermometer {\n"
+      + "    double measureTemperature(Person p);\n"
+      + "  }\n"
+      + "  @GenerateDoubles\n"
+      + "  public interface Megameter extends Thermometer {\n"
+      + "    boolean isInfected(Person p);\n"
+      + "    boolean isBreathing(Person p);\n"
+      + "    void calibrate(String units, int passes);\n"
+      + "    double reading(int sensor);\n"
+      + "    <T extends Comparable<T>> T reading(String label, T... values);\n"
+      + "  }\n"
+      + "}\n";
+
+  private File directory;
+  private DiagnosticCollector<JavaFileObject> diagnostics;
+  private ClassLoader classLoader;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = File.createTempFile("doubles", "");
+    assertTrue(directory.delete() && directory.mkdir());
+  }
+
+  @After
+  public void deleteDirectory() {
+    delete(directory);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private boolean compile(final String source) throws IOException {
+    final File sourceFile = new File(directory, "DoctorTest.java");
+    final Writer writer = new FileWriter(sourceFile);
+    try {
+      writer.write(source);
+    } finally {
+      writer.close();
+    }
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    diagnostics = new DiagnosticCollector<JavaFileObject>();
+    final StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, null, null);
+    try {
+      final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+          Arrays.asList("-classpath", System.getProperty("java.class.path"),
+              "-processor", DoublesProcessor.class.getName(),
+              "-d", directory.getPath(), "-s", directory.getPath()),
+          null, fileManager.getJavaFileObjects(sourceFile));
+      return task.call();
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private void assertCompiles(final String source) throws IOException {
+    final boolean compiled = compile(source);
+    assertTrue(diagnostics(), compiled);
+  }
+
+  private Class<?> load(final String simpleName) throws Exception {
+    if (classLoader == null) {
+      classLoader = new URLClassLoader(
+          new URL[] { directory.toURI().toURL() }, getClass().getClassLoader());
+    }
+    return Class.forName(PACKAGE + "." + simpleName, true, classLoader);
+  }
+
+  private static Object call(final Object target, final String method,
+      final Class<?>[] parameterTypes, final Object... args) throws Throwable {
+    try {
+      return target.getClass().getMethod(method, parameterTypes).invoke(target, args);
+    } catch (final InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static Class<?>[] types(final Class<?>... types) {
+    return types;
+  }
+
+  @Test
+  public void testStub() throws Throwable {
+    assertCompiles(DOCTOR_TEST);
+    final Class<?> person = load("DoctorTest$Person");
+    final Object stub = load("DoctorTest_MegameterStub").getDeclaredConstructor().newInstance();
+
+    assertEquals(0.0, call(stub, "measureTemperature", types(person), (Object) null));
+    call(stub, "setMeasureTemperatureResult", types(double.class), 105.6);
+    call(stub, "setIsBreathingResult", types(boolean.class), true);
+    assertEquals(105.6, call(stub, "measureTemperature", types(person), (Object) null));
+    assertEquals(true, call(stub, "isBreathing", types(person), (Object) null));
+
+    // the generic overload of reading() gets numbered, and cast on the way out
+    call(stub, "setReading2Result", types(Comparable.class), "high");
+    assertEquals("high", call(stub, "reading", types(String.class, Comparable[].class),
+        "label", new String[0]));
+  }
+
+  @Test
+  public void testMock() throws Throwable {
+    assertCompiles(DOCTOR_TEST);
+    final Class<?> person = load("DoctorTest$Person");
+    final Object mock = load("DoctorTest_MegameterMock").getDeclaredConstructor().newInstance();
+
+    call(mock, "setCanMeasureTemperature", types(boolean.class), true);
+    call(mock, "setMeasureTemperatureResult", types(double.class), 105.6);
+    assertEquals(105.6, call(mock, "measureTemperature", types(person), (Object) null));
+
+    try {
+      call(mock, "isBreathing", types(person), (Object) null);
+      fail();
+    } catch (final AssertionError e) {
+      assertEquals("Shouldn't be calling isBreathing!", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testSpy() throws Throwable {
+    assertCompiles(DOCTOR_TEST);
+    final Class<?> person = load("DoctorTest$Person");
+    final Object patient = person.getDeclaredConstructor().newInstance();
+    final Object spy = load("DoctorTest_MegameterSpy").getDeclaredConstructor().newInstance();
+
+    call(spy, "setIsBreathingResult", types(boolean.class), true);
+    assertEquals(true, call(spy, "isBreathing", types(person), patient));
+    call(spy, "calibrate", types(String.class, int.class), "F", 3);
+    call(spy, "reading", types(int.class), 7);
+    call(spy, "reading", types(String.class, Comparable[].class), "label", new String[0]);
+
+    final List<?> calls = (List<?>) call(spy, "getCalls", types());
+    assertEquals(4, calls.size());
+    assertEquals("isBreathing(" + patient + ")", calls.get(0).toString());
+    assertEquals("calibrate", call(calls.get(1), "getMethod", types()));
+    assertEquals(Arrays.asList("F", 3),
+        Arrays.asList((Object[]) call(calls.get(1), "getArg", types())));
+    assertEquals("reading(7)", calls.get(2).toString());
+    // overloads are told apart by their numbered names
+    assertEquals("reading2", call(calls.get(3), "getMethod", types()));
+  }
+
+  @Test
+  public void testOnlyInterfaces() throws Exception {
+    assertFalse(compile("package " + PACKAGE + ";\n"
+        + "@com.tomtresansky.mockitopresentation.doubles.GenerateDoubles\n"
+        + "public class DoctorTest {}\n"));
+    assertTrue(diagnostics(),
+        diagnostics().contains("@GenerateDoubles only works on interfaces"));
+  }
+
+  private String diagnostics() {
+    final StringBuilder messages = new StringBuilder();
+    for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      messages.append(diagnostic).append('\n');
+    }
+    return messages.toString();
+  }
+}
@@ -0,0 +1,29 @@
+package com.tomtresansky.mockitopresentation.doubles;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+ * Put on an interface to have DoublesProcessor write a stub, a mock and a spy
+ * for it at compile time - the same kind of doubles as the hand written ones
+ * in example01, but without having to write them.
+ *
+ * For a Megameter interface nested in DoctorTest, the generated classes are
+ * DoctorTest_MegameterStub, DoctorTest_MegameterMock and
+ * DoctorTest_MegameterSpy, in the same package. They're plain Java, so there's
+ * no proxy or reflection between the code under test and the double.
+ *
+ * Only has an effect when javac is told to run the processor - it isn't
+ * registered as a service, so it never runs by surprise:
+ *
+ *   javac -processorpath bin
+ *       -processor com.tomtresansky.mockitopresentation.doubles.DoublesProcessor
+ *       -d bin ...
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateDoubles {
+  // marker only
+}
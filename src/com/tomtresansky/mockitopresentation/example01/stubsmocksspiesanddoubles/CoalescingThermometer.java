@@ -0,0 +1,198 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Wraps a slow thermometer (like the ActualThermometer, calibrating every
+ * time) so that when lots of threads want the same person's temperature at
+ * once, it's only measured once:
+ *
+ *   - the first caller measures, everyone asking about that person while it
+ *     does waits for its result instead of measuring again
+ *   - for freshMillis after that, the same result is handed straight back
+ *
+ * A failed measurement is thrown to everyone who was waiting on it, but
+ * isn't kept - the next caller measures again.
+ *
+ * People are told apart by identity (Person doesn't override equals()).
+ */
+final class CoalescingThermometer implements Thermometer {
+  /*
+   * Every this many measurements, results which have gone stale are
+   * thrown away, so people who aren't measured again aren't kept forever.
+   */
+  private static final int SWEEP_INTERVAL = 1024;
+
+  private final Thermometer delegate;
+  private final long freshNanos;
+  private final ConcurrentMap<Person, Measurement> measurements =
+      new ConcurrentHashMap<Person, Measurement>();
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong measured = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong freshHits = new AtomicLong();
+
+  /*
+   * With a freshMillis of 0, only measurements already in progress are
+   * shared.
+   */
+  public CoalescingThermometer(final Thermometer delegate, final long freshMillis) {
+    if (freshMillis < 0) {
+      throw new IllegalArgumentException("Freshness can't be negative: " + freshMillis);
+    }
+    this.delegate = delegate;
+    this.freshNanos = TimeUnit.MILLISECONDS.toNanos(freshMillis);
+  }
+
+  @Override
+  public double measureTemperature(final Person p) {
+    calls.incrementAndGet();
+    while (true) {
+      final Measurement current = measurements.get(p);
+      if (current != null) {
+        if (!current.isFinished()) {
+          coalesced.incrementAndGet();
+          return current.temperature();
+        }
+        if (current.isFresh()) {
+          freshHits.incrementAndGet();
+          return current.temperature();
+        }
+      }
+
+      final Measurement mine = new Measurement(p);
+      final boolean claimed = current == null
+          ? measurements.putIfAbsent(p, mine) == null
+          : measurements.replace(p, current, mine);
+      if (claimed) {
+        return measure(mine);
+      }
+      // someone else got there first, use theirs
+    }
+  }
+
+  private double measure(final Measurement measurement) {
+    if (measured.incrementAndGet() % SWEEP_INTERVAL == 0) {
+      sweep();
+    }
+    measurement.run();
+    if (!measurement.isFresh()) {
+      // failed, or there's no keeping results
+      measurements.remove(measurement.person, measurement);
+    }
+    return measurement.temperature();
+  }
+
+  private void sweep() {
+    for (final Iterator<Measurement> it = measurements.values().iterator(); it.hasNext();) {
+      final Measurement measurement = it.next();
+      if (measurement.isFinished() && !measurement.isFresh()) {
+        it.remove();
+      }
+    }
+  }
+
+  public long getCalls() {
+    return calls.get();
+  }
+
+  /*
+   * Calls which went through to the wrapped thermometer.
+   */
+  public long getMeasured() {
+    return measured.get();
+  }
+
+  /*
+   * Calls which waited on someone else's measurement.
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /*
+   * Calls answered by a measurement which had already finished.
+   */
+  public long getFreshHits() {
+    return freshHits.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d calls, %d measured, %d coalesced, %d fresh hits",
+        getCalls(), getMeasured(), getCoalesced(), getFreshHits());
+  }
+
+  /*
+   * One measurement of one person, run by the caller who claimed it.
+   */
+  private final class Measurement extends FutureTask<Double> {
+    private final Person person;
+    private volatile long finishedAt;
+    private volatile boolean succeeded;
+
+    /*
+     * Set last, once the others can be read.
+     */
+    private volatile boolean finished;
+
+    Measurement(final Person person) {
+      super(new Callable<Double>() {
+        @Override
+        public Double call() {
+          return delegate.measureTemperature(person);
+        }
+      });
+      this.person = person;
+    }
+
+    @Override
+    protected void done() {
+      finishedAt = System.nanoTime();
+      try {
+        get();
+        succeeded = true;
+      } catch (final Exception e) {
+        succeeded = false;
+      }
+      finished = true;
+    }
+
+    boolean isFinished() {
+      return finished;
+    }
+
+    /*
+     * Whether it finished, and well enough and recently enough to be used
+     * again.
+     */
+    boolean isFresh() {
+      return finished && succeeded && System.nanoTime() - finishedAt < freshNanos;
+    }
+
+    double temperature() {
+      try {
+        return get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted waiting for a measurement", e);
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+}
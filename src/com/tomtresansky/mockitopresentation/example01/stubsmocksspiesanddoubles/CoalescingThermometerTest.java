@@ -0,0 +1,161 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CoalescingThermometerTest {
+  private static final int CALLERS = 8;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+  private final Person patient = new Person(Person.NORMAL_TEMP + 3);
+
+  @After
+  public void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  /*
+   * Doesn't finish measuring until it's let go, then reads the temperature
+   * straight off the person or runs out of mercury.
+   */
+  private static final class HeldThermometer implements Thermometer {
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final AtomicInteger measurements = new AtomicInteger();
+    private final boolean fails;
+
+    HeldThermometer(final boolean fails) {
+      this.fails = fails;
+    }
+
+    @Override
+    public double measureTemperature(final Person p) {
+      measurements.incrementAndGet();
+      try {
+        released.await();
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException("Interrupted");
+      }
+      if (fails) {
+        throw new RuntimeException("Insufficient mercury!");
+      }
+      return p.temp;
+    }
+  }
+
+  private List<Future<Boolean>> checkAtOnce(final Person p, final Thermometer thermometer) {
+    final List<Future<Boolean>> checks = new ArrayList<Future<Boolean>>();
+    for (int i = 0; i < CALLERS; i++) {
+      checks.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return new Doctor().checkForFever(p, thermometer);
+        }
+      }));
+    }
+    return checks;
+  }
+
+  private static void awaitCoalesced(final CoalescingThermometer thermometer, final long count)
+      throws InterruptedException {
+    for (int i = 0; i < 1000 && thermometer.getCoalesced() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, thermometer.getCoalesced());
+  }
+
+  @Test
+  public void testConcurrentCallsShareOneMeasurement() throws Exception {
+    final HeldThermometer held = new HeldThermometer(false);
+    final CoalescingThermometer thermometer = new CoalescingThermometer(held, 0);
+
+    final List<Future<Boolean>> checks = checkAtOnce(patient, thermometer);
+    awaitCoalesced(thermometer, CALLERS - 1);
+    held.released.countDown();
+
+    for (final Future<Boolean> check : checks) {
+      assertTrue(check.get());
+    }
+    assertEquals(1, held.measurements.get());
+    assertEquals(1, thermometer.getMeasured());
+    assertEquals(CALLERS, thermometer.getCalls());
+  }
+
+  @Test
+  public void testDifferentPeopleAreMeasuredSeparately() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    final Person other = new Person(Person.NORMAL_TEMP);
+    final CoalescingThermometer thermometer = new CoalescingThermometer(mockThermometer, 60000);
+
+    thermometer.measureTemperature(patient);
+    thermometer.measureTemperature(other);
+
+    verify(mockThermometer).measureTemperature(patient);
+    verify(mockThermometer).measureTemperature(other);
+  }
+
+  @Test
+  public void testFreshResultsAreReused() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(patient)).thenReturn(patient.temp);
+    final CoalescingThermometer thermometer = new CoalescingThermometer(mockThermometer, 60000);
+
+    assertEquals(patient.temp, thermometer.measureTemperature(patient), 0);
+    assertEquals(patient.temp, thermometer.measureTemperature(patient), 0);
+
+    verify(mockThermometer, times(1)).measureTemperature(patient);
+    assertEquals(1, thermometer.getFreshHits());
+  }
+
+  @Test
+  public void testStaleResultsAreMeasuredAgain() throws Exception {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    final CoalescingThermometer thermometer = new CoalescingThermometer(mockThermometer, 1);
+
+    thermometer.measureTemperature(patient);
+    Thread.sleep(20);
+    thermometer.measureTemperature(patient);
+
+    verify(mockThermometer, times(2)).measureTemperature(patient);
+    assertEquals(0, thermometer.getFreshHits());
+  }
+
+  @Test
+  public void testFailuresGoToEveryoneWaitingButAreNotKept() throws Exception {
+    final HeldThermometer held = new HeldThermometer(true);
+    final CoalescingThermometer thermometer = new CoalescingThermometer(held, 60000);
+
+    final List<Future<Boolean>> checks = checkAtOnce(patient, thermometer);
+    awaitCoalesced(thermometer, CALLERS - 1);
+    held.released.countDown();
+
+    for (final Future<Boolean> check : checks) {
+      try {
+        check.get();
+        fail();
+      } catch (final ExecutionException e) {
+        assertEquals("Insufficient mercury!", e.getCause().getMessage());
+      }
+    }
+
+    // the next caller tries again
+    try {
+      thermometer.measureTemperature(patient);
+      fail();
+    } catch (final RuntimeException e) {
+      assertEquals(2, held.measurements.get());
+    }
+  }
+}
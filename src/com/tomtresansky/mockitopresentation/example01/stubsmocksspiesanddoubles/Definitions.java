@@ -1,7 +1,15 @@
 package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
 
-import java.util.Date;
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /*
  * Thermometer interface measures temperature.
@@ -10,6 +18,23 @@ interface Thermometer {
   double measureTemperature(Person p);
 }
 
+/*
+ * A thermometer which can also take a whole batch of temperatures in one go,
+ * rather than one call per patient.
+ */
+interface BulkThermometer extends Thermometer {
+  /*
+   * Puts the temperature of people[from + i] into temps[i], for every person
+   * from..to-1.
+   */
+  void measureTemperatures(Person[] people, int from, int to, double[] temps);
+
+  /*
+   * The same for people in a batch.
+   */
+  void measureTemperatures(PersonBatch people, int from, int to, double[] temps);
+}
+
 /*
  * Person class has a single field: it's temperature, and a constant: normal
  * human body temperature.
@@ -24,19 +49,313 @@ class Person {
   }
 }
 
+/*
+ * The temperatures of a lot of people, kept in one column rather than as a
+ * Person object each - so a person costs 8 bytes, not an object header plus a
+ * reference as well.
+ *
+ * The column is either a double[] on the heap, or a direct buffer outside of
+ * it (which the garbage collector never has to look at).
+ */
+abstract class PersonBatch {
+  /*
+   * A direct buffer is limited to 2GB, 8 bytes a person.
+   */
+  static final int MAX_OFF_HEAP_SIZE = Integer.MAX_VALUE / 8;
+
+  public static PersonBatch onHeap(final int size) {
+    return new HeapPersonBatch(new double[size]);
+  }
+
+  public static PersonBatch offHeap(final int size) {
+    if (size < 0 || size > MAX_OFF_HEAP_SIZE) {
+      throw new IllegalArgumentException("Can't store " + size + " people off heap");
+    }
+    return new DirectPersonBatch(ByteBuffer.allocateDirect(size * 8)
+        .order(ByteOrder.nativeOrder()).asDoubleBuffer());
+  }
+
+  public abstract int size();
+
+  public abstract double getTemp(int i);
+
+  public abstract void setTemp(int i, double temp);
+
+  /*
+   * Copies temperatures of people from..to-1 into temps[0..].
+   */
+  public abstract void getTemps(int from, int to, double[] temps);
+
+  /*
+   * A Person with person i's temperature - a new object every time, for code
+   * which can only deal with those.
+   */
+  public Person getPerson(final int i) {
+    return new Person(getTemp(i));
+  }
+
+  private static final class HeapPersonBatch extends PersonBatch {
+    private final double[] temps;
+
+    HeapPersonBatch(final double[] temps) {
+      this.temps = temps;
+    }
+
+    @Override
+    public int size() {
+      return temps.length;
+    }
+
+    @Override
+    public double getTemp(final int i) {
+      return temps[i];
+    }
+
+    @Override
+    public void setTemp(final int i, final double temp) {
+      temps[i] = temp;
+    }
+
+    @Override
+    public void getTemps(final int from, final int to, final double[] into) {
+      System.arraycopy(temps, from, into, 0, to - from);
+    }
+  }
+
+  private static final class DirectPersonBatch extends PersonBatch {
+    private final DoubleBuffer temps;
+
+    DirectPersonBatch(final DoubleBuffer temps) {
+      this.temps = temps;
+    }
+
+    @Override
+    public int size() {
+      return temps.capacity();
+    }
+
+    @Override
+    public double getTemp(final int i) {
+      return temps.get(i);
+    }
+
+    @Override
+    public void setTemp(final int i, final double temp) {
+      temps.put(i, temp);
+    }
+
+    @Override
+    public void getTemps(final int from, final int to, final double[] into) {
+      // a duplicate has its own position, so batches can be read concurrently
+      final DoubleBuffer range = temps.duplicate();
+      range.position(from);
+      range.get(into, 0, to - from);
+    }
+  }
+}
+
 /*
  * The Doctor can use a thermometer to check patient for a fever.
  */
 class Doctor {
+  /*
+   * Batches bigger than this get split up when screened on an executor.
+   */
+  static final int SCREENING_CHUNK = 64 * 1024;
+
+  /*
+   * Temperatures are taken this many at a time, so a batch only needs a small
+   * buffer rather than a double for everyone.
+   */
+  private static final int SCREENING_BLOCK = 1024;
+
   public boolean checkForFever(final Person p, final Thermometer t) {
     return t.measureTemperature(p) > Person.NORMAL_TEMP;
   }
+
+  /*
+   * Screens a whole population: bit i is set when people[i] has a fever.
+   */
+  public BitSet checkForFevers(final Person[] people, final Thermometer t) {
+    return screen(measuring(people, t), 0, people.length);
+  }
+
+  /*
+   * Same again, with big batches screened in chunks on the executor - so the
+   * thermometer had better be safe to use from several threads.
+   */
+  public BitSet checkForFevers(final Person[] people, final Thermometer t,
+      final ExecutorService executor) {
+    return screen(measuring(people, t), people.length, executor);
+  }
+
+  /*
+   * Screens people stored in a batch: bit i is set when person i has a fever.
+   * Only a BulkThermometer can take their temperatures without a Person
+   * object being made for each of them.
+   */
+  public BitSet checkForFevers(final PersonBatch people, final Thermometer t) {
+    return screen(measuring(people, t), 0, people.size());
+  }
+
+  public BitSet checkForFevers(final PersonBatch people, final Thermometer t,
+      final ExecutorService executor) {
+    return screen(measuring(people, t), people.size(), executor);
+  }
+
+  /*
+   * Keeps watch on a stream of readings, with no more than bufferSize of
+   * them waiting to be evaluated.
+   */
+  public FeverMonitor monitor(final Flow.Publisher<TemperaturePublisher.Reading> readings,
+      final int bufferSize) {
+    final FeverMonitor monitor = new FeverMonitor(bufferSize);
+    readings.subscribe(monitor);
+    return monitor;
+  }
+
+  /*
+   * Bit i is set when temps[i] is a fever.
+   */
+  public BitSet feverish(final double[] temps) {
+    final BitSet fevers = new BitSet(temps.length);
+    feverish(temps, temps.length, 0, fevers);
+    return fevers;
+  }
+
+  /*
+   * The same test as checkForFever(), for a temperature that's already been
+   * taken.
+   */
+  static boolean isFever(final double temp) {
+    return temp > Person.NORMAL_TEMP;
+  }
+
+  private static void feverish(final double[] temps, final int count, final int offset,
+      final BitSet fevers) {
+    for (int i = 0; i < count; i++) {
+      if (isFever(temps[i])) {
+        fevers.set(offset + i);
+      }
+    }
+  }
+
+  /*
+   * Takes the temperatures of people from..to-1 into temps[0..].
+   */
+  private interface Measurer {
+    void measure(int from, int to, double[] temps);
+  }
+
+  private static Measurer measuring(final Person[] people, final Thermometer t) {
+    if (t instanceof BulkThermometer) {
+      return new Measurer() {
+        @Override
+        public void measure(final int from, final int to, final double[] temps) {
+          ((BulkThermometer) t).measureTemperatures(people, from, to, temps);
+        }
+      };
+    }
+    return new Measurer() {
+      @Override
+      public void measure(final int from, final int to, final double[] temps) {
+        for (int i = from; i < to; i++) {
+          temps[i - from] = t.measureTemperature(people[i]);
+        }
+      }
+    };
+  }
+
+  private static Measurer measuring(final PersonBatch people, final Thermometer t) {
+    if (t instanceof BulkThermometer) {
+      return new Measurer() {
+        @Override
+        public void measure(final int from, final int to, final double[] temps) {
+          ((BulkThermometer) t).measureTemperatures(people, from, to, temps);
+        }
+      };
+    }
+    return new Measurer() {
+      @Override
+      public void measure(final int from, final int to, final double[] temps) {
+        for (int i = from; i < to; i++) {
+          temps[i - from] = t.measureTemperature(people.getPerson(i));
+        }
+      }
+    };
+  }
+
+  /*
+   * Bit i is set when person from + i has a fever.
+   */
+  private static BitSet screen(final Measurer measurer, final int from, final int to) {
+    final BitSet fevers = new BitSet(to - from);
+    final double[] temps = new double[Math.min(SCREENING_BLOCK, to - from)];
+    for (int blockFrom = from; blockFrom < to; blockFrom += SCREENING_BLOCK) {
+      final int blockTo = Math.min(to, blockFrom + SCREENING_BLOCK);
+      measurer.measure(blockFrom, blockTo, temps);
+      feverish(temps, blockTo - blockFrom, blockFrom - from, fevers);
+    }
+    return fevers;
+  }
+
+  private static BitSet screen(final Measurer measurer, final int size,
+      final ExecutorService executor) {
+    final List<Future<BitSet>> chunks = new ArrayList<Future<BitSet>>();
+    for (int from = 0; from < size; from += SCREENING_CHUNK) {
+      final int chunkFrom = from;
+      final int chunkTo = Math.min(size, from + SCREENING_CHUNK);
+      chunks.add(executor.submit(new Callable<BitSet>() {
+        @Override
+        public BitSet call() {
+          return screen(measurer, chunkFrom, chunkTo);
+        }
+      }));
+    }
+
+    final BitSet fevers = new BitSet(size);
+    try {
+      for (int chunk = 0; chunk < chunks.size(); chunk++) {
+        final BitSet chunkFevers = chunks.get(chunk).get();
+        final int offset = chunk * SCREENING_CHUNK;
+        for (int i = chunkFevers.nextSetBit(0); i >= 0; i = chunkFevers.nextSetBit(i + 1)) {
+          fevers.set(offset + i);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while screening", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (final Future<BitSet> chunk : chunks) {
+        chunk.cancel(true);
+      }
+    }
+    return fevers;
+  }
 }
 
 /*
  * "Actual" thermometer uses complex routines to determine temperature.
  */
 class ActualThermometer implements Thermometer {
+  private final FaultInjector faults;
+
+  /*
+   * Breaks one time in three.
+   */
+  public ActualThermometer() {
+    this(FaultInjector.random(1.0 / 3));
+  }
+
+  public ActualThermometer(final FaultInjector faults) {
+    this.faults = faults;
+  }
+
   @Override
   public double measureTemperature(final Person p) {
     System.out.println("Calibrating...");
@@ -52,7 +371,7 @@ class ActualThermometer implements Thermometer {
      * And as with any ACTUAL implementation, there's always the danger of
      * something going wrong...
      */
-    if (new Random(new Date().getTime()).nextInt(3) == 0) {
+    if (faults.shouldFail()) {
       throw new RuntimeException("Insufficient mercury!");
     }
 
@@ -0,0 +1,143 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DiagnosisEngine.Diagnosis;
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DoctorUnitTestsWithMocks.Megameter;
+
+/*
+ * Megameter calls and time per diagnosis, over a ward whose patients are
+ * each diagnosed a few times: asking the Megameter everything every time,
+ * then a DiagnosisEngine without and with its cache.
+ *
+ * Most patients are well, so once the engine has seen that the infection
+ * test is the slow one, it mostly isn't needed - no fever, no infection
+ * diagnosis.
+ */
+public final class DiagnosisBenchmark {
+  private static final int WARD = 1000;
+  private static final int ROUNDS = 5;
+
+  private DiagnosisBenchmark() {
+    // only run from main
+  }
+
+  /*
+   * Takes a while to answer, as a real one would: breathing is quick to see,
+   * a temperature takes longer, and an infection test longer still.
+   */
+  static final class WardMegameter implements Megameter {
+    private long calls;
+
+    private static void busy(final long nanos) {
+      final long until = System.nanoTime() + nanos;
+      while (System.nanoTime() - until < 0) {
+        // waiting on the device
+      }
+    }
+
+    @Override
+    public double measureTemperature(final Person p) {
+      calls++;
+      busy(5000);
+      return p.temp;
+    }
+
+    @Override
+    public boolean isInfected(final Person p) {
+      calls++;
+      busy(50000);
+      return p.temp > Person.NORMAL_TEMP + 2;
+    }
+
+    @Override
+    public boolean isBreathing(final Person p) {
+      calls++;
+      busy(500);
+      return p.temp > 90;
+    }
+  }
+
+  /*
+   * 1 in 100 not breathing, 1 in 10 with a fever, and a third of those
+   * infected.
+   */
+  private static Person[] ward() {
+    final Person[] ward = new Person[WARD];
+    for (int i = 0; i < WARD; i++) {
+      final double temp;
+      if (i % 100 == 99) {
+        temp = 80;
+      } else if (i % 30 == 0) {
+        temp = Person.NORMAL_TEMP + 3;
+      } else if (i % 10 == 0) {
+        temp = Person.NORMAL_TEMP + 1;
+      } else {
+        temp = Person.NORMAL_TEMP;
+      }
+      ward[i] = new Person(temp);
+    }
+    return ward;
+  }
+
+  private interface Diagnostician {
+    Diagnosis diagnose(Person p);
+  }
+
+  /*
+   * Every signal, every time, then decide.
+   */
+  static Diagnosis askEverything(final Megameter m, final Person p) {
+    final boolean breathing = m.isBreathing(p);
+    final boolean infected = m.isInfected(p);
+    final boolean fever = Doctor.isFever(m.measureTemperature(p));
+    if (!breathing) {
+      return Diagnosis.CRITICAL;
+    } else if (infected && fever) {
+      return Diagnosis.INFECTION;
+    } else if (fever) {
+      return Diagnosis.FEVER;
+    }
+    return Diagnosis.HEALTHY;
+  }
+
+  private static void run(final String name, final WardMegameter megameter,
+      final Diagnostician diagnostician) {
+    final Person[] ward = ward();
+    final long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      for (final Person p : ward) {
+        diagnostician.diagnose(p);
+      }
+    }
+    final double diagnoses = ROUNDS * WARD;
+    System.out.println(String.format("%-40s %6.2f calls/diagnosis %9.1f us/diagnosis", name,
+        megameter.calls / diagnoses, (System.nanoTime() - start) / 1e3 / diagnoses));
+  }
+
+  public static void main(final String[] args) {
+    final WardMegameter everything = new WardMegameter();
+    run("ask everything", everything, new Diagnostician() {
+      @Override
+      public Diagnosis diagnose(final Person p) {
+        return askEverything(everything, p);
+      }
+    });
+
+    final WardMegameter uncached = new WardMegameter();
+    final DiagnosisEngine uncachedEngine = new DiagnosisEngine(uncached, 0);
+    run("DiagnosisEngine, no cache", uncached, new Diagnostician() {
+      @Override
+      public Diagnosis diagnose(final Person p) {
+        return uncachedEngine.diagnose(p);
+      }
+    });
+
+    final WardMegameter cached = new WardMegameter();
+    final DiagnosisEngine cachedEngine = new DiagnosisEngine(cached, 60000);
+    run("DiagnosisEngine, cached for a minute", cached, new Diagnostician() {
+      @Override
+      public Diagnosis diagnose(final Person p) {
+        return cachedEngine.diagnose(p);
+      }
+    });
+  }
+}
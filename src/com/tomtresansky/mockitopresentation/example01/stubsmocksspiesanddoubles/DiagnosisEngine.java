@@ -0,0 +1,268 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DoctorUnitTestsWithMocks.Megameter;
+
+/*
+ * Diagnoses people with everything a Megameter can tell, not just whether
+ * they have a fever.
+ *
+ * A diagnosis is the first rule (in order) whose signals all hold, e.g. "not
+ * breathing" before "infected and a fever". The Megameter is only asked for
+ * what's needed to decide, each thing at most once per diagnosis, and within
+ * a rule:
+ *
+ *   - signals already known for this diagnosis are looked at first, so a
+ *     rule that's already failed costs nothing
+ *   - then the cheapest, by how long each has taken so far - so a quick
+ *     check that fails saves asking a slow one
+ *
+ * Diagnoses are kept for ttlMillis, asking about the same person in that
+ * time doesn't use the Megameter at all.
+ */
+final class DiagnosisEngine {
+  /*
+   * Every this many diagnoses, expired ones are thrown away.
+   */
+  private static final int SWEEP_INTERVAL = 1024;
+
+  /*
+   * How much of a new cost sample goes into the running average, as a shift:
+   * 1/8.
+   */
+  private static final int COST_SMOOTHING = 3;
+
+  private static final int UNKNOWN = 0;
+  private static final int TRUE = 1;
+  private static final int FALSE = 2;
+
+  /*
+   * Something the Megameter can tell about a person.
+   */
+  enum Signal {
+    FEVER {
+      @Override
+      boolean probe(final Megameter m, final Person p) {
+        return Doctor.isFever(m.measureTemperature(p));
+      }
+    },
+    INFECTED {
+      @Override
+      boolean probe(final Megameter m, final Person p) {
+        return m.isInfected(p);
+      }
+    },
+    NOT_BREATHING {
+      @Override
+      boolean probe(final Megameter m, final Person p) {
+        return !m.isBreathing(p);
+      }
+    };
+
+    abstract boolean probe(Megameter m, Person p);
+  }
+
+  /*
+   * Most urgent first.
+   */
+  enum Diagnosis {
+    CRITICAL, INFECTION, FEVER, HEALTHY
+  }
+
+  /*
+   * The diagnosis when all of the signals hold.
+   */
+  static final class Rule {
+    private final Diagnosis diagnosis;
+    private final Signal[] signals;
+
+    Rule(final Diagnosis diagnosis, final Signal... signals) {
+      this.diagnosis = diagnosis;
+      this.signals = signals.clone();
+    }
+
+    @Override
+    public String toString() {
+      return diagnosis + " <- " + Arrays.toString(signals);
+    }
+  }
+
+  /*
+   * Anyone none of these match is HEALTHY.
+   */
+  static final List<Rule> DEFAULT_RULES = Collections.unmodifiableList(Arrays.asList(
+      new Rule(Diagnosis.CRITICAL, Signal.NOT_BREATHING),
+      new Rule(Diagnosis.INFECTION, Signal.INFECTED, Signal.FEVER),
+      new Rule(Diagnosis.FEVER, Signal.FEVER)));
+
+  private final Megameter megameter;
+  private final long ttlNanos;
+  private final Rule[] rules;
+  private final ConcurrentMap<Person, Cached> cache = new ConcurrentHashMap<Person, Cached>();
+
+  private final AtomicLongArray costNanos = new AtomicLongArray(Signal.values().length);
+  private final AtomicLongArray probes = new AtomicLongArray(Signal.values().length);
+  private final AtomicLong diagnoses = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+
+  DiagnosisEngine(final Megameter megameter, final long ttlMillis) {
+    this(megameter, ttlMillis, DEFAULT_RULES);
+  }
+
+  /*
+   * With a ttlMillis of 0, nothing is cached.
+   */
+  DiagnosisEngine(final Megameter megameter, final long ttlMillis, final List<Rule> rules) {
+    if (ttlMillis < 0) {
+      throw new IllegalArgumentException("Time to live can't be negative: " + ttlMillis);
+    }
+    this.megameter = megameter;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.rules = rules.toArray(new Rule[rules.size()]);
+  }
+
+  public Diagnosis diagnose(final Person p) {
+    final long now = System.nanoTime();
+    if (diagnoses.incrementAndGet() % SWEEP_INTERVAL == 0) {
+      sweep(now);
+    }
+
+    final Cached cached = cache.get(p);
+    if (cached != null && now - cached.expires < 0) {
+      cacheHits.incrementAndGet();
+      return cached.diagnosis;
+    }
+
+    final Diagnosis diagnosis = evaluate(p);
+    if (ttlNanos > 0) {
+      cache.put(p, new Cached(diagnosis, System.nanoTime() + ttlNanos));
+    }
+    return diagnosis;
+  }
+
+  private Diagnosis evaluate(final Person p) {
+    final int[] known = new int[Signal.values().length];
+    for (final Rule rule : rules) {
+      if (holds(rule, p, known)) {
+        return rule.diagnosis;
+      }
+    }
+    return Diagnosis.HEALTHY;
+  }
+
+  private boolean holds(final Rule rule, final Person p, final int[] known) {
+    final Signal[] signals = inCheckingOrder(rule.signals, known);
+    for (final Signal signal : signals) {
+      if (known[signal.ordinal()] == UNKNOWN) {
+        known[signal.ordinal()] = probe(signal, p) ? TRUE : FALSE;
+      }
+      if (known[signal.ordinal()] == FALSE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Known signals first, then cheapest first. Rules are a handful of signals
+   * long, so an insertion sort does.
+   */
+  private Signal[] inCheckingOrder(final Signal[] signals, final int[] known) {
+    final Signal[] ordered = signals.clone();
+    for (int i = 1; i < ordered.length; i++) {
+      final Signal signal = ordered[i];
+      int j = i - 1;
+      while (j >= 0 && checkBefore(signal, ordered[j], known)) {
+        ordered[j + 1] = ordered[j];
+        j--;
+      }
+      ordered[j + 1] = signal;
+    }
+    return ordered;
+  }
+
+  private boolean checkBefore(final Signal a, final Signal b, final int[] known) {
+    final boolean aKnown = known[a.ordinal()] != UNKNOWN;
+    final boolean bKnown = known[b.ordinal()] != UNKNOWN;
+    if (aKnown != bKnown) {
+      return aKnown;
+    }
+    return costNanos.get(a.ordinal()) < costNanos.get(b.ordinal());
+  }
+
+  private boolean probe(final Signal signal, final Person p) {
+    probes.incrementAndGet(signal.ordinal());
+    final long start = System.nanoTime();
+    try {
+      return signal.probe(megameter, p);
+    } finally {
+      final long cost = System.nanoTime() - start;
+      // racy, but it's only an estimate
+      final long average = costNanos.get(signal.ordinal());
+      costNanos.set(signal.ordinal(), average + ((cost - average) >> COST_SMOOTHING));
+    }
+  }
+
+  private void sweep(final long now) {
+    for (final Iterator<Cached> it = cache.values().iterator(); it.hasNext();) {
+      if (now - it.next().expires >= 0) {
+        it.remove();
+      }
+    }
+  }
+
+  public long getDiagnoses() {
+    return diagnoses.get();
+  }
+
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /*
+   * How many times the Megameter was asked for the signal.
+   */
+  public long getProbes(final Signal signal) {
+    return probes.get(signal.ordinal());
+  }
+
+  public long getProbes() {
+    long total = 0;
+    for (final Signal signal : Signal.values()) {
+      total += getProbes(signal);
+    }
+    return total;
+  }
+
+  /*
+   * The running average of how long the signal takes to find out.
+   */
+  public long getCostNanos(final Signal signal) {
+    return costNanos.get(signal.ordinal());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d diagnoses, %d from the cache, %.2f probes each", getDiagnoses(),
+        getCacheHits(), getDiagnoses() == 0 ? 0.0 : (double) getProbes() / getDiagnoses());
+  }
+
+  private static final class Cached {
+    final Diagnosis diagnosis;
+    final long expires;
+
+    Cached(final Diagnosis diagnosis, final long expires) {
+      this.diagnosis = diagnosis;
+      this.expires = expires;
+    }
+  }
+}
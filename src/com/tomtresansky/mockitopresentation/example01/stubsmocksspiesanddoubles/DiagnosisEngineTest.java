@@ -0,0 +1,144 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DiagnosisEngine.Diagnosis;
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DiagnosisEngine.Rule;
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DiagnosisEngine.Signal;
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DoctorUnitTestsWithMocks.Megameter;
+
+public class DiagnosisEngineTest {
+  private final Person patient = new Person(Person.NORMAL_TEMP + 3);
+
+  private static Megameter megameter(final double temp, final boolean infected,
+      final boolean breathing) {
+    final Megameter mockMegameter = mock(Megameter.class);
+    when(mockMegameter.measureTemperature(any(Person.class))).thenReturn(temp);
+    when(mockMegameter.isInfected(any(Person.class))).thenReturn(infected);
+    when(mockMegameter.isBreathing(any(Person.class))).thenReturn(breathing);
+    return mockMegameter;
+  }
+
+  @Test
+  public void testNotBreathingIsAllThatMatters() {
+    final Megameter mockMegameter = megameter(Person.NORMAL_TEMP + 3, true, false);
+
+    assertEquals(Diagnosis.CRITICAL, new DiagnosisEngine(mockMegameter, 0).diagnose(patient));
+
+    verify(mockMegameter).isBreathing(patient);
+    verifyNoMoreInteractions(mockMegameter);
+  }
+
+  @Test
+  public void testInfectionWithAFever() {
+    assertEquals(Diagnosis.INFECTION, new DiagnosisEngine(
+        megameter(Person.NORMAL_TEMP + 3, true, true), 0).diagnose(patient));
+  }
+
+  @Test
+  public void testJustAFever() {
+    assertEquals(Diagnosis.FEVER, new DiagnosisEngine(
+        megameter(Person.NORMAL_TEMP + 3, false, true), 0).diagnose(patient));
+  }
+
+  @Test
+  public void testHealthy() {
+    assertEquals(Diagnosis.HEALTHY, new DiagnosisEngine(
+        megameter(Person.NORMAL_TEMP, true, true), 0).diagnose(patient));
+  }
+
+  @Test
+  public void testEachSignalAskedForOnce() {
+    final Megameter mockMegameter = megameter(Person.NORMAL_TEMP, false, true);
+
+    new DiagnosisEngine(mockMegameter, 0).diagnose(patient);
+
+    // FEVER is in two rules, but only measured once
+    verify(mockMegameter, times(1)).measureTemperature(patient);
+    verify(mockMegameter, atMost(1)).isInfected(patient);
+  }
+
+  /*
+   * Healthy, but slow to tell whether someone's infected.
+   */
+  private static final class SlowInfectionMegameter implements Megameter {
+    private int infectionChecks;
+
+    @Override
+    public double measureTemperature(final Person p) {
+      return p.temp;
+    }
+
+    @Override
+    public boolean isInfected(final Person p) {
+      infectionChecks++;
+      try {
+        Thread.sleep(5);
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException("Interrupted");
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isBreathing(final Person p) {
+      return true;
+    }
+  }
+
+  @Test
+  public void testCheapSignalsAreCheckedFirst() {
+    final SlowInfectionMegameter megameter = new SlowInfectionMegameter();
+    final DiagnosisEngine engine = new DiagnosisEngine(megameter, 0);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Diagnosis.HEALTHY, engine.diagnose(new Person(Person.NORMAL_TEMP)));
+    }
+
+    // once to find out it's slow, after that no fever means no need to ask
+    assertEquals(1, megameter.infectionChecks);
+    assertTrue(engine.getCostNanos(Signal.INFECTED) > engine.getCostNanos(Signal.FEVER));
+  }
+
+  @Test
+  public void testDiagnosesAreCached() {
+    final Megameter mockMegameter = megameter(Person.NORMAL_TEMP + 3, false, true);
+    final DiagnosisEngine engine = new DiagnosisEngine(mockMegameter, 60000);
+
+    assertEquals(Diagnosis.FEVER, engine.diagnose(patient));
+    assertEquals(Diagnosis.FEVER, engine.diagnose(patient));
+
+    verify(mockMegameter, times(1)).isBreathing(patient);
+    assertEquals(1, engine.getCacheHits());
+  }
+
+  @Test
+  public void testCachedDiagnosesExpire() throws Exception {
+    final Megameter mockMegameter = megameter(Person.NORMAL_TEMP + 3, false, true);
+    final DiagnosisEngine engine = new DiagnosisEngine(mockMegameter, 1);
+
+    engine.diagnose(patient);
+    Thread.sleep(20);
+    engine.diagnose(patient);
+
+    verify(mockMegameter, times(2)).isBreathing(patient);
+    assertEquals(0, engine.getCacheHits());
+  }
+
+  @Test
+  public void testOwnRules() {
+    final Megameter mockMegameter = megameter(Person.NORMAL_TEMP + 3, true, true);
+    final DiagnosisEngine engine = new DiagnosisEngine(mockMegameter, 0,
+        Arrays.asList(new Rule(Diagnosis.INFECTION, Signal.INFECTED)));
+
+    assertEquals(Diagnosis.INFECTION, engine.diagnose(patient));
+    verify(mockMegameter).isInfected(patient);
+    verifyNoMoreInteractions(mockMegameter);
+  }
+}
@@ -0,0 +1,115 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DoctorBatchScreeningTest {
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  /*
+   * Every third person has a fever.
+   */
+  private static Person[] population(final int size) {
+    final Person[] people = new Person[size];
+    for (int i = 0; i < size; i++) {
+      people[i] = new Person(i % 3 == 0 ? Person.NORMAL_TEMP + 3 : Person.NORMAL_TEMP);
+    }
+    return people;
+  }
+
+  @Test
+  public void testScreeningWithAPlainThermometer() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    final Person feverishPerson = new Person(Person.NORMAL_TEMP + 10);
+    final Person healthyPerson = new Person(Person.NORMAL_TEMP);
+    when(mockThermometer.measureTemperature(feverishPerson)).thenReturn(Person.NORMAL_TEMP + 10);
+    when(mockThermometer.measureTemperature(healthyPerson)).thenReturn(Person.NORMAL_TEMP);
+
+    final BitSet fevers = new Doctor().checkForFevers(
+        new Person[] { healthyPerson, feverishPerson, healthyPerson }, mockThermometer);
+
+    assertEquals("{1}", fevers.toString());
+    verify(mockThermometer, times(3)).measureTemperature(any(Person.class));
+  }
+
+  @Test
+  public void testScreeningUsesTheBulkMethod() {
+    final BulkThermometer spyThermometer = spy(new ReadingThermometer());
+    final Person[] people = population(10);
+
+    assertEquals("{0, 3, 6, 9}", new Doctor().checkForFevers(people, spyThermometer).toString());
+    verify(spyThermometer).measureTemperatures(eq(people), eq(0), eq(10), any(double[].class));
+    verify(spyThermometer, never()).measureTemperature(any(Person.class));
+  }
+
+  @Test
+  public void testScreeningOnAnExecutor() {
+    final Person[] people = population(Doctor.SCREENING_CHUNK * 3 + 17);
+    final Doctor doctor = new Doctor();
+
+    final BitSet fevers = doctor.checkForFevers(people, new ReadingThermometer(), executor);
+
+    assertEquals(doctor.checkForFevers(people, new ReadingThermometer()), fevers);
+    assertEquals((people.length + 2) / 3, fevers.cardinality());
+  }
+
+  private static PersonBatch batchOf(final PersonBatch batch, final Person[] people) {
+    for (int i = 0; i < people.length; i++) {
+      batch.setTemp(i, people[i].temp);
+    }
+    return batch;
+  }
+
+  @Test
+  public void testScreeningBatches() {
+    final Person[] people = population(Doctor.SCREENING_CHUNK + 5);
+    final Doctor doctor = new Doctor();
+    final BitSet expected = doctor.checkForFevers(people, new ReadingThermometer());
+
+    for (final PersonBatch batch : new PersonBatch[] {
+        batchOf(PersonBatch.onHeap(people.length), people),
+        batchOf(PersonBatch.offHeap(people.length), people) }) {
+      assertEquals(expected, doctor.checkForFevers(batch, new ReadingThermometer()));
+      assertEquals(expected, doctor.checkForFevers(batch, new ReadingThermometer(), executor));
+    }
+  }
+
+  @Test
+  public void testScreeningABatchWithAPlainThermometer() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(any(Person.class))).thenReturn(Person.NORMAL_TEMP);
+
+    final PersonBatch batch = batchOf(PersonBatch.offHeap(3), population(3));
+    final BitSet fevers = new Doctor().checkForFevers(batch, mockThermometer);
+
+    assertTrue(fevers.isEmpty());
+    verify(mockThermometer, times(3)).measureTemperature(any(Person.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOffHeapBatchesAreLimitedToTwoGigabytes() {
+    PersonBatch.offHeap(PersonBatch.MAX_OFF_HEAP_SIZE + 1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testBrokenThermometerOnAnExecutor() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(any(Person.class)))
+        .thenThrow(new IllegalStateException("Insufficient mercury!"));
+
+    new Doctor().checkForFevers(population(10), mockThermometer, executor);
+  }
+}
@@ -0,0 +1,89 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.Date;
+import java.util.Random;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+
+/*
+ * Per-call cost of deciding whether the ActualThermometer breaks: the way it
+ * used to (a new Random seeded from a new Date every call) against a
+ * FaultInjector.
+ *
+ * Also prints how often a decision is the same as the one before it. For
+ * independent one-in-three failures that's about 56% of the time, the old
+ * way it's nearly always - every call in the same millisecond got the same
+ * seed, so the same answer.
+ */
+public final class FaultInjectionBenchmark {
+  private static final int DECISIONS = 100000;
+
+  private FaultInjectionBenchmark() {
+    // only run from main
+  }
+
+  static boolean randomFromDate() {
+    return new Random(new Date().getTime()).nextInt(3) == 0;
+  }
+
+  static final class RandomFromDate extends Benchmark {
+    RandomFromDate() {
+      super("new Random(new Date().getTime()).nextInt(3)", 100000);
+    }
+
+    @Override
+    protected Object runOnce() {
+      return randomFromDate() ? Boolean.TRUE : Boolean.FALSE;
+    }
+  }
+
+  static final class Injector extends Benchmark {
+    private final FaultInjector faults;
+
+    Injector(final String name, final FaultInjector faults) {
+      super(name, 100000);
+      this.faults = faults;
+    }
+
+    @Override
+    protected Object runOnce() {
+      return faults.shouldFail() ? Boolean.TRUE : Boolean.FALSE;
+    }
+  }
+
+  private interface Decision {
+    boolean fail();
+  }
+
+  private static void printRepeats(final String name, final Decision decision) {
+    int repeats = 0;
+    boolean previous = decision.fail();
+    for (int i = 0; i < DECISIONS; i++) {
+      final boolean next = decision.fail();
+      repeats += next == previous ? 1 : 0;
+      previous = next;
+    }
+    System.out.println(String.format("%-50s %11.1f %% same as the one before",
+        name, 100.0 * repeats / DECISIONS));
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Benchmark.runAll(new RandomFromDate(),
+        new Injector("FaultInjector.random(1.0 / 3)", FaultInjector.random(1.0 / 3)),
+        new Injector("FaultInjector.seeded(42, 1.0 / 3)", FaultInjector.seeded(42, 1.0 / 3)));
+
+    printRepeats("new Random(new Date().getTime()).nextInt(3)", new Decision() {
+      @Override
+      public boolean fail() {
+        return randomFromDate();
+      }
+    });
+    final FaultInjector faults = FaultInjector.random(1.0 / 3);
+    printRepeats("FaultInjector.random(1.0 / 3)", new Decision() {
+      @Override
+      public boolean fail() {
+        return faults.shouldFail();
+      }
+    });
+  }
+}
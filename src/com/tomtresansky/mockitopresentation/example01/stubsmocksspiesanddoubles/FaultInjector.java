@@ -0,0 +1,98 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Decides when something "actual" should go wrong, e.g. the ActualThermometer
+ * running out of mercury.
+ *
+ * Each thread gets its own stream of random numbers (the SplitMix64 generator
+ * java.util.SplittableRandom uses in later JDKs, which isn't in Java 6), so a
+ * decision is a few arithmetic operations - no allocation, no shared state
+ * between threads.
+ *
+ * A seeded injector is reproducible: the first thread to use it always gets
+ * the same sequence of failures, the second thread the next stream, and so
+ * on. An unseeded one starts from the clock.
+ */
+final class FaultInjector {
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  /*
+   * Results are 53 bit numbers, compared to the failure rate scaled to match.
+   */
+  private static final double SCALE = 1L << 53;
+
+  private final long threshold;
+  private final double failureRate;
+
+  /*
+   * Seeds of the per-thread streams come from here.
+   */
+  private final AtomicLong seeds;
+
+  private final ThreadLocal<Stream> streams = new ThreadLocal<Stream>() {
+    @Override
+    protected Stream initialValue() {
+      return new Stream(mix64(seeds.getAndAdd(GOLDEN_GAMMA)));
+    }
+  };
+
+  private FaultInjector(final long seed, final double failureRate) {
+    if (!(failureRate >= 0 && failureRate <= 1)) {
+      throw new IllegalArgumentException("Failure rate must be from 0 to 1: " + failureRate);
+    }
+    this.seeds = new AtomicLong(seed);
+    this.failureRate = failureRate;
+    this.threshold = failureRate == 1 ? Long.MAX_VALUE : (long) (failureRate * SCALE);
+  }
+
+  /*
+   * Fails the given fraction of the time, differently on every run.
+   */
+  public static FaultInjector random(final double failureRate) {
+    return new FaultInjector(mix64(System.nanoTime() ^ System.currentTimeMillis()), failureRate);
+  }
+
+  /*
+   * Fails the given fraction of the time, the same way every run.
+   */
+  public static FaultInjector seeded(final long seed, final double failureRate) {
+    return new FaultInjector(seed, failureRate);
+  }
+
+  public static FaultInjector never() {
+    return new FaultInjector(0, 0);
+  }
+
+  public double getFailureRate() {
+    return failureRate;
+  }
+
+  public boolean shouldFail() {
+    if (threshold == 0) {
+      return false;
+    }
+    return (streams.get().next() >>> 11) < threshold;
+  }
+
+  private static long mix64(final long seed) {
+    long z = seed;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private static final class Stream {
+    private long state;
+
+    Stream(final long seed) {
+      this.state = seed;
+    }
+
+    long next() {
+      state += GOLDEN_GAMMA;
+      return mix64(state);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class FaultInjectorTest {
+  private static boolean[] decisions(final FaultInjector faults, final int count) {
+    final boolean[] decisions = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      decisions[i] = faults.shouldFail();
+    }
+    return decisions;
+  }
+
+  private static int failures(final boolean[] decisions) {
+    int failures = 0;
+    for (final boolean failed : decisions) {
+      failures += failed ? 1 : 0;
+    }
+    return failures;
+  }
+
+  @Test
+  public void testSeededInjectorsRepeatThemselves() {
+    final boolean[] first = decisions(FaultInjector.seeded(42, 1.0 / 3), 1000);
+    final boolean[] second = decisions(FaultInjector.seeded(42, 1.0 / 3), 1000);
+    final boolean[] otherSeed = decisions(FaultInjector.seeded(43, 1.0 / 3), 1000);
+
+    assertTrue(Arrays.equals(first, second));
+    assertFalse(Arrays.equals(first, otherSeed));
+  }
+
+  @Test
+  public void testFailureRate() {
+    final int failures = failures(decisions(FaultInjector.random(0.25), 100000));
+    assertTrue("failures: " + failures, failures > 24000 && failures < 26000);
+
+    assertEquals(0, failures(decisions(FaultInjector.never(), 1000)));
+    assertEquals(1000, failures(decisions(FaultInjector.seeded(1, 1), 1000)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFailureRateAboveOne() {
+    FaultInjector.seeded(1, 1.5);
+  }
+
+  @Test
+  public void testEachThreadGetsItsOwnStream() throws Exception {
+    final FaultInjector faults = FaultInjector.seeded(42, 0.5);
+    final boolean[] mainThread = decisions(faults, 1000);
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final boolean[] otherThread = executor.submit(new Callable<boolean[]>() {
+        @Override
+        public boolean[] call() {
+          return decisions(faults, 1000);
+        }
+      }).get();
+
+      // Not the main thread's decisions over again
+      assertFalse(Arrays.equals(mainThread, otherThread));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testThermometerWhichNeverBreaks() {
+    final Person feverishPerson = new Person(Person.NORMAL_TEMP + 10);
+    final ActualThermometer thermometer = new ActualThermometer(FaultInjector.never());
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(new Doctor().checkForFever(feverishPerson, thermometer));
+    }
+  }
+
+  @Test
+  public void testThermometerWhichAlwaysBreaks() {
+    final ActualThermometer thermometer = new ActualThermometer(FaultInjector.seeded(1, 1));
+    try {
+      thermometer.measureTemperature(new Person(Person.NORMAL_TEMP));
+      fail();
+    } catch (final RuntimeException e) {
+      assertEquals("Insufficient mercury!", e.getMessage());
+    }
+  }
+}
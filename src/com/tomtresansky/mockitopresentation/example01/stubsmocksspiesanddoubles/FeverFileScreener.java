@@ -0,0 +1,205 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/*
+ * Screens a file of temperatures too big for the heap: a binary file of
+ * doubles, one per person, as written by DataOutputStream.writeDouble().
+ *
+ * The file is memory mapped a window at a time, and every temperature the
+ * Doctor calls a fever has its index (a long, again in DataOutput's byte
+ * order) written to the output file, in order. Temperatures are never copied
+ * onto the heap, and the flagged indices go from a direct buffer straight to
+ * the output channel - so memory use depends on the window size and how many
+ * windows are screened at once, not on the size of the file.
+ *
+ * With an executor, up to "parallelism" windows are screened at the same
+ * time, and written out in order as they finish.
+ */
+final class FeverFileScreener {
+  static final int DEFAULT_WINDOW_TEMPS = 1024 * 1024;
+
+  private static final int TEMP_BYTES = 8;
+  private static final int INDEX_BYTES = 8;
+
+  /*
+   * A mapped window, like any buffer, is limited to 2GB.
+   */
+  static final int MAX_WINDOW_TEMPS = Integer.MAX_VALUE / TEMP_BYTES;
+
+  /*
+   * Indices flagged in a window go here first, it's grown when a window has
+   * more fevers than this.
+   */
+  private static final int INITIAL_FLAGGED_BYTES = 64 * 1024;
+
+  private final ByteOrder order;
+  private final int windowTemps;
+
+  FeverFileScreener() {
+    this(ByteOrder.BIG_ENDIAN, DEFAULT_WINDOW_TEMPS);
+  }
+
+  FeverFileScreener(final ByteOrder order, final int windowTemps) {
+    if (windowTemps <= 0) {
+      throw new IllegalArgumentException("Window must hold some temperatures: " + windowTemps);
+    }
+    if (windowTemps > MAX_WINDOW_TEMPS) {
+      throw new IllegalArgumentException("Can't map " + windowTemps + " temperatures at once");
+    }
+    this.order = order;
+    this.windowTemps = windowTemps;
+  }
+
+  /*
+   * Screens the whole file on this thread, returning how many people were
+   * flagged.
+   */
+  public long screen(final File temperatures, final File flagged) throws IOException {
+    return screen(temperatures, flagged, null, 1);
+  }
+
+  public long screen(final File temperatures, final File flagged,
+      final ExecutorService executor, final int parallelism) throws IOException {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+
+    final FileInputStream in = new FileInputStream(temperatures);
+    try {
+      final FileOutputStream out = new FileOutputStream(flagged);
+      try {
+        return screen(in.getChannel(), out.getChannel(), executor, parallelism);
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private long screen(final FileChannel in, final FileChannel out,
+      final ExecutorService executor, final int parallelism) throws IOException {
+    final long size = in.size();
+    if (size % TEMP_BYTES != 0) {
+      throw new IOException("Not a whole number of temperatures: " + size + " bytes");
+    }
+    final long temps = size / TEMP_BYTES;
+
+    // Only used by this thread: buffers are handed to a window and come back
+    // with its results
+    final Deque<ByteBuffer> freeBuffers = new ArrayDeque<ByteBuffer>();
+    final Deque<Future<ByteBuffer>> inFlight = new ArrayDeque<Future<ByteBuffer>>();
+
+    long flaggedCount = 0;
+    long nextWindow = 0;
+    try {
+      while (nextWindow < temps || !inFlight.isEmpty()) {
+        while (nextWindow < temps && inFlight.size() < parallelism) {
+          final ByteBuffer buffer = freeBuffers.isEmpty()
+              ? ByteBuffer.allocateDirect(INITIAL_FLAGGED_BYTES)
+              : freeBuffers.removeFirst();
+          final FutureTask<ByteBuffer> window = new FutureTask<ByteBuffer>(new Window(in,
+              nextWindow, (int) Math.min(windowTemps, temps - nextWindow), buffer));
+          if (executor == null) {
+            window.run();
+          } else {
+            executor.execute(window);
+          }
+          inFlight.addLast(window);
+          nextWindow += windowTemps;
+        }
+
+        final ByteBuffer windowFlagged = get(inFlight.removeFirst());
+        flaggedCount += windowFlagged.remaining() / INDEX_BYTES;
+        while (windowFlagged.hasRemaining()) {
+          out.write(windowFlagged);
+        }
+        windowFlagged.clear();
+        freeBuffers.addLast(windowFlagged);
+      }
+    } finally {
+      for (final Future<ByteBuffer> window : inFlight) {
+        window.cancel(true);
+      }
+    }
+    return flaggedCount;
+  }
+
+  private static ByteBuffer get(final Future<ByteBuffer> window) throws IOException {
+    try {
+      return window.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while screening");
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /*
+   * Screens one window of the file, returning the flagged indices ready to be
+   * written.
+   */
+  private final class Window implements Callable<ByteBuffer> {
+    private final FileChannel in;
+    private final long first;
+    private final int count;
+    private ByteBuffer flagged;
+
+    Window(final FileChannel in, final long first, final int count, final ByteBuffer flagged) {
+      this.in = in;
+      this.first = first;
+      this.count = count;
+      this.flagged = flagged;
+    }
+
+    @Override
+    public ByteBuffer call() throws IOException {
+      final DoubleBuffer temps = in.map(FileChannel.MapMode.READ_ONLY,
+          first * TEMP_BYTES, (long) count * TEMP_BYTES).order(order).asDoubleBuffer();
+      for (int i = 0; i < count; i++) {
+        if (Doctor.isFever(temps.get(i))) {
+          if (flagged.remaining() < INDEX_BYTES) {
+            flagged = grow(flagged);
+          }
+          flagged.putLong(first + i);
+        }
+      }
+      flagged.flip();
+      return flagged;
+    }
+
+    /*
+     * Never past room for every temperature in the window, which the limit
+     * on the window keeps under 2GB.
+     */
+    private ByteBuffer grow(final ByteBuffer full) {
+      final ByteBuffer bigger = ByteBuffer.allocateDirect(
+          (int) Math.min(2L * full.capacity(), (long) count * INDEX_BYTES));
+      full.flip();
+      bigger.put(full);
+      return bigger;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeverFileScreenerTest {
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  private File temperatures;
+  private File flagged;
+
+  @Before
+  public void createFiles() throws IOException {
+    temperatures = File.createTempFile("temperatures", ".bin");
+    flagged = File.createTempFile("flagged", ".bin");
+  }
+
+  @After
+  public void deleteFiles() {
+    executor.shutdownNow();
+    temperatures.delete();
+    flagged.delete();
+  }
+
+  /*
+   * Writes count temperatures, with a fever for every seventh person.
+   */
+  private void writeTemperatures(final int count) throws IOException {
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temperatures)));
+    try {
+      for (int i = 0; i < count; i++) {
+        out.writeDouble(i % 7 == 0 ? Person.NORMAL_TEMP + 2 : Person.NORMAL_TEMP);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private List<Long> readFlagged() throws IOException {
+    final List<Long> indices = new ArrayList<Long>();
+    final DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(flagged)));
+    try {
+      while (true) {
+        indices.add(in.readLong());
+      }
+    } catch (final EOFException e) {
+      return indices;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static List<Long> everySeventh(final int count) {
+    final List<Long> indices = new ArrayList<Long>();
+    for (long i = 0; i < count; i += 7) {
+      indices.add(i);
+    }
+    return indices;
+  }
+
+  @Test
+  public void testScreeningAFile() throws IOException {
+    writeTemperatures(10000);
+
+    // Small windows, so there's more than one of them
+    final long count = new FeverFileScreener(ByteOrder.BIG_ENDIAN, 999)
+        .screen(temperatures, flagged);
+
+    assertEquals(everySeventh(10000), readFlagged());
+    assertEquals(readFlagged().size(), count);
+  }
+
+  @Test
+  public void testScreeningAFileInParallel() throws IOException {
+    writeTemperatures(100000);
+
+    final long count = new FeverFileScreener(ByteOrder.BIG_ENDIAN, 1000)
+        .screen(temperatures, flagged, executor, 4);
+
+    assertEquals(everySeventh(100000), readFlagged());
+    assertEquals(readFlagged().size(), count);
+  }
+
+  @Test
+  public void testWindowWithMoreFeversThanTheBufferHolds() throws IOException {
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temperatures)));
+    try {
+      for (int i = 0; i < 20000; i++) {
+        out.writeDouble(Person.NORMAL_TEMP + 1);
+      }
+    } finally {
+      out.close();
+    }
+
+    assertEquals(20000, new FeverFileScreener().screen(temperatures, flagged));
+    assertEquals(20000 * 8, flagged.length());
+  }
+
+  @Test
+  public void testEmptyFile() throws IOException {
+    assertEquals(0, new FeverFileScreener().screen(temperatures, flagged, executor, 2));
+    assertEquals(0, flagged.length());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWindowTooBigToMap() {
+    new FeverFileScreener(ByteOrder.BIG_ENDIAN, FeverFileScreener.MAX_WINDOW_TEMPS + 1);
+  }
+
+  @Test(expected = IOException.class)
+  public void testPartialTemperature() throws IOException {
+    final FileOutputStream out = new FileOutputStream(temperatures);
+    try {
+      out.write(new byte[12]);
+    } finally {
+      out.close();
+    }
+
+    new FeverFileScreener().screen(temperatures, flagged);
+  }
+}
@@ -0,0 +1,160 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.TemperaturePublisher.Reading;
+
+/*
+ * The Doctor's end of ward monitoring: keeps track of who has a fever, from
+ * a stream of readings.
+ *
+ * Readings arrive into a buffer of a fixed size, and are only requested when
+ * there's room for them - half a buffer's worth at a time, as the Doctor
+ * gets through them with evaluate(). However far behind the Doctor gets,
+ * there's never more than a buffer of readings waiting.
+ *
+ * evaluate() is meant to be called from one thread, the Doctor's. Who has a
+ * fever can be asked from anywhere.
+ */
+final class FeverMonitor implements Flow.Subscriber<Reading> {
+  private final BlockingQueue<Reading> buffer;
+  private final int bufferSize;
+  private final int batch;
+
+  private volatile Flow.Subscription subscription;
+  private volatile Throwable error;
+  private volatile boolean completed;
+
+  /*
+   * Only used from evaluate().
+   */
+  private int evaluatedSinceRequest;
+
+  private final Set<Person> feverish =
+      Collections.newSetFromMap(new ConcurrentHashMap<Person, Boolean>());
+  private final AtomicLong evaluated = new AtomicLong();
+
+  FeverMonitor(final int bufferSize) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer must hold some readings: " + bufferSize);
+    }
+    this.buffer = new ArrayBlockingQueue<Reading>(bufferSize);
+    this.bufferSize = bufferSize;
+    this.batch = Math.max(1, bufferSize / 2);
+  }
+
+  @Override
+  public void onSubscribe(final Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel(); // already monitoring something
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(bufferSize);
+  }
+
+  @Override
+  public void onNext(final Reading reading) {
+    if (!buffer.offer(reading)) {
+      subscription.cancel();
+      throw new IllegalStateException("More readings sent than were requested");
+    }
+  }
+
+  @Override
+  public void onError(final Throwable throwable) {
+    error = throwable;
+  }
+
+  @Override
+  public void onComplete() {
+    completed = true;
+  }
+
+  /*
+   * Evaluates the readings waiting in the buffer, returning how many there
+   * were.
+   */
+  public int evaluate() {
+    int count = 0;
+    Reading reading;
+    while ((reading = buffer.poll()) != null) {
+      evaluate(reading);
+      count++;
+    }
+    return count;
+  }
+
+  /*
+   * The same, but waits up to the timeout for a reading when there aren't
+   * any.
+   */
+  public int evaluate(final long timeout, final TimeUnit unit) throws InterruptedException {
+    final Reading reading = buffer.poll(timeout, unit);
+    if (reading == null) {
+      return 0;
+    }
+    evaluate(reading);
+    return 1 + evaluate();
+  }
+
+  private void evaluate(final Reading reading) {
+    if (Doctor.isFever(reading.getTemp())) {
+      feverish.add(reading.getPerson());
+    } else {
+      feverish.remove(reading.getPerson());
+    }
+    evaluated.incrementAndGet();
+
+    if (++evaluatedSinceRequest == batch) {
+      evaluatedSinceRequest = 0;
+      subscription.request(batch);
+    }
+  }
+
+  public void cancel() {
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  /*
+   * Who had a fever at their latest reading.
+   */
+  public Set<Person> getFeverish() {
+    return new HashSet<Person>(feverish);
+  }
+
+  public boolean isFeverish(final Person p) {
+    return feverish.contains(p);
+  }
+
+  public long getEvaluated() {
+    return evaluated.get();
+  }
+
+  /*
+   * Readings received but not evaluated yet.
+   */
+  public int getBuffered() {
+    return buffer.size();
+  }
+
+  /*
+   * Why the stream stopped, or null if it hasn't or just ran out.
+   */
+  public Throwable getError() {
+    return error;
+  }
+
+  public boolean isCompleted() {
+    return completed;
+  }
+}
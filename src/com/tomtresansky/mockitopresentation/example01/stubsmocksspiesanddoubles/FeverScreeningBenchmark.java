@@ -0,0 +1,154 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+
+/*
+ * Screens a population of a million people for fevers: one checkForFever()
+ * per person, the batch checkForFevers() with a plain and a bulk thermometer,
+ * the batch split over a thread per CPU, and batches stored in a PersonBatch
+ * rather than as Person objects. Times are per whole population.
+ */
+public final class FeverScreeningBenchmark {
+  private static final int POPULATION = 1000 * 1000;
+
+  private FeverScreeningBenchmark() {
+    // only run from main
+  }
+
+  private static Person[] population() {
+    final Person[] people = new Person[POPULATION];
+    for (int i = 0; i < POPULATION; i++) {
+      people[i] = new Person(Person.NORMAL_TEMP - 1 + (i % 5));
+    }
+    return people;
+  }
+
+  /*
+   * Anywhere but a micro-benchmark, the doctor sees more than one kind of
+   * thermometer, and measureTemperature() becomes a virtual call. This gets
+   * checkForFever() used with a few different ones first, the same as in a
+   * test run.
+   */
+  private static void useOtherThermometers(final Doctor doctor, final Person[] people) {
+    final Thermometer[] thermometers = {
+        new Thermometer() {
+          @Override
+          public double measureTemperature(final Person p) {
+            return Person.NORMAL_TEMP;
+          }
+        },
+        new Thermometer() {
+          @Override
+          public double measureTemperature(final Person p) {
+            return p.temp + 1;
+          }
+        },
+        new Thermometer() {
+          @Override
+          public double measureTemperature(final Person p) {
+            return p.temp - 1;
+          }
+        } };
+    for (final Thermometer thermometer : thermometers) {
+      for (int i = 0; i < people.length; i++) {
+        doctor.checkForFever(people[i], thermometer);
+      }
+    }
+  }
+
+  static final class OnePersonAtATime extends Benchmark {
+    private final Doctor doctor = new Doctor();
+    private final Person[] people = population();
+    private final Thermometer thermometer = new ReadingThermometer();
+
+    OnePersonAtATime(final boolean otherThermometers) {
+      super(otherThermometers
+          ? "checkForFever() per person, other thermometers used"
+          : "checkForFever() per person", 5);
+      if (otherThermometers) {
+        useOtherThermometers(doctor, people);
+      }
+    }
+
+    @Override
+    protected Object runOnce() {
+      final BitSet fevers = new BitSet(people.length);
+      for (int i = 0; i < people.length; i++) {
+        if (doctor.checkForFever(people[i], thermometer)) {
+          fevers.set(i);
+        }
+      }
+      return fevers;
+    }
+  }
+
+  static final class Batch extends Benchmark {
+    private final Doctor doctor = new Doctor();
+    private final Person[] people = population();
+    private final Thermometer thermometer;
+    private final ExecutorService executor;
+
+    Batch(final String name, final Thermometer thermometer, final ExecutorService executor) {
+      super(name, 5);
+      this.thermometer = thermometer;
+      this.executor = executor;
+    }
+
+    @Override
+    protected Object runOnce() {
+      return executor == null
+          ? doctor.checkForFevers(people, thermometer)
+          : doctor.checkForFevers(people, thermometer, executor);
+    }
+  }
+
+  static final class StoredBatch extends Benchmark {
+    private final Doctor doctor = new Doctor();
+    private final PersonBatch people;
+    private final Thermometer thermometer = new ReadingThermometer();
+
+    StoredBatch(final boolean offHeap) {
+      super(offHeap
+          ? "checkForFevers() PersonBatch.offHeap()"
+          : "checkForFevers() PersonBatch.onHeap()", 5);
+      people = offHeap ? PersonBatch.offHeap(POPULATION) : PersonBatch.onHeap(POPULATION);
+      final Person[] population = population();
+      for (int i = 0; i < POPULATION; i++) {
+        people.setTemp(i, population[i].temp);
+      }
+    }
+
+    @Override
+    protected Object runOnce() {
+      return doctor.checkForFevers(people, thermometer);
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    // A thermometer which isn't a BulkThermometer, just the same readings
+    final Thermometer plainThermometer = new Thermometer() {
+      @Override
+      public double measureTemperature(final Person p) {
+        return p.temp;
+      }
+    };
+
+    try {
+      Benchmark.runAll(new OnePersonAtATime(false), new OnePersonAtATime(true),
+          new Batch("checkForFevers() plain thermometer", plainThermometer, null),
+          new Batch("checkForFevers() bulk thermometer", new ReadingThermometer(), null),
+          new Batch("checkForFevers() bulk thermometer, executor",
+              new ReadingThermometer(), executor),
+          new StoredBatch(false), new StoredBatch(true));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
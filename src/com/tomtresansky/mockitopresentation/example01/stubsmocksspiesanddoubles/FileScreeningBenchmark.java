@@ -0,0 +1,87 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Throughput and heap use of FeverFileScreener over a generated file of
+ * temperatures, on this thread and with a window per CPU in parallel.
+ *
+ * Run with -Dbenchmark.temperatures=... to change the size of the file (25
+ * million temperatures, 200MB, by default). Give it a small -Xmx to see that
+ * the heap doesn't need to hold the file.
+ */
+public final class FileScreeningBenchmark {
+  private static final int TEMPERATURES = Integer.getInteger("benchmark.temperatures", 25000000);
+  private static final int RUNS = 5;
+
+  private FileScreeningBenchmark() {
+    // only run from main
+  }
+
+  public static void main(final String[] args) throws IOException {
+    final File temperatures = File.createTempFile("temperatures", ".bin");
+    final File flagged = File.createTempFile("flagged", ".bin");
+    final int cpus = Runtime.getRuntime().availableProcessors();
+    final ExecutorService executor = Executors.newFixedThreadPool(cpus);
+    try {
+      write(temperatures);
+
+      final FeverFileScreener screener = new FeverFileScreener();
+      for (int run = 0; run < RUNS; run++) {
+        report("this thread", temperatures, flagged, screener, null, 1);
+      }
+      for (int run = 0; run < RUNS; run++) {
+        report("executor, " + cpus + " CPU(s)", temperatures, flagged, screener, executor, cpus);
+      }
+    } finally {
+      executor.shutdown();
+      temperatures.delete();
+      flagged.delete();
+    }
+  }
+
+  /*
+   * Temperatures around normal, about one in six of them a fever.
+   */
+  private static void write(final File temperatures) throws IOException {
+    final Random random = new Random(42);
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temperatures), 1024 * 1024));
+    try {
+      for (int i = 0; i < TEMPERATURES; i++) {
+        out.writeDouble(Person.NORMAL_TEMP - 1 + random.nextGaussian());
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void report(final String name, final File temperatures, final File flagged,
+      final FeverFileScreener screener, final ExecutorService executor, final int parallelism)
+      throws IOException {
+    final long heapBefore = usedHeap();
+    final long start = System.nanoTime();
+    final long count = screener.screen(temperatures, flagged, executor, parallelism);
+    final long nanos = System.nanoTime() - start;
+    final long heapAfter = usedHeap();
+
+    System.out.println(String.format("%-20s %,12d flagged %8.1f ms %8.1f MB/s %,14d heap bytes",
+        name, count, nanos / 1e6, temperatures.length() / 1e6 / (nanos / 1e9),
+        heapAfter - heapBefore));
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,38 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+/*
+ * The interfaces of java.util.concurrent.Flow (which is Java 9), for
+ * streams of readings where the receiving end says how many it can take.
+ * The rules are the same as there:
+ *
+ *   - subscribe() calls onSubscribe() before anything else
+ *   - onNext() is called at most as many times as request() has asked for,
+ *     never from two threads at once
+ *   - onError() or onComplete() ends the stream, and so does cancel()
+ *   - request() of zero or less is an error, reported through onError()
+ */
+final class Flow {
+  private Flow() {
+    // just a holder for the interfaces
+  }
+
+  interface Publisher<T> {
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  interface Subscriber<T> {
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+  }
+
+  interface Subscription {
+    void request(long n);
+
+    void cancel();
+  }
+}
@@ -0,0 +1,75 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Counts latencies into buckets, so percentiles can be read off at any time
+ * without keeping every sample. Safe to record into from many threads.
+ *
+ * Each power of two is split into 8 buckets, so a percentile is at most 12.5%
+ * above the real value (it's reported as the top of its bucket).
+ */
+final class LatencyHistogram {
+  private static final int EXACT = 16;
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /*
+   * Powers of two from 2^4 up to 2^62.
+   */
+  private static final int BUCKETS = EXACT + (63 - 4) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+
+  public void record(final long nanos) {
+    counts.incrementAndGet(bucketOf(Math.max(0, nanos)));
+    count.incrementAndGet();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /*
+   * The latency which the given fraction (0.5 for the median) of recorded
+   * latencies are at or below, 0 when nothing was recorded.
+   */
+  public long getPercentile(final double fraction) {
+    final long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= rank) {
+        return highestIn(bucket);
+      }
+    }
+    // a record() in progress counted, but not yet in a bucket
+    return highestIn(BUCKETS - 1);
+  }
+
+  static int bucketOf(final long nanos) {
+    if (nanos < EXACT) {
+      return (int) nanos;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    final int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return EXACT + (exponent - 4) * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestIn(final int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    final int exponent = (bucket - EXACT) / SUB_BUCKETS + 4;
+    final int subBucket = (bucket - EXACT) % SUB_BUCKETS;
+    final long lowest = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
@@ -0,0 +1,130 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+/*
+ * Memory taken by a population stored as Person objects, and as a PersonBatch
+ * on and off the heap, for 10, 50 and 100 million people (or the numbers
+ * given as arguments).
+ *
+ * Heap is measured after a few GCs; the off heap batch's buffer isn't on the
+ * heap, so its size is what was allocated. Populations which don't fit are
+ * reported as such - the Person objects need roughly -Xmx4g for 100 million.
+ */
+public final class PopulationMemoryBenchmark {
+  private static final int[] DEFAULT_SIZES = { 10000000, 50000000, 100000000 };
+
+  /*
+   * Keeps the population being measured reachable.
+   */
+  private static Object population;
+
+  private PopulationMemoryBenchmark() {
+    // only run from main
+  }
+
+  private interface Population {
+    String getName();
+
+    /*
+     * Creates the population, returning bytes used outside of the heap.
+     */
+    long create(int size);
+  }
+
+  private static final Population PERSON_OBJECTS = new Population() {
+    @Override
+    public String getName() {
+      return "new Person(...)";
+    }
+
+    @Override
+    public long create(final int size) {
+      final Person[] people = new Person[size];
+      population = people;
+      for (int i = 0; i < size; i++) {
+        people[i] = new Person(Person.NORMAL_TEMP);
+      }
+      return 0;
+    }
+  };
+
+  private static final Population HEAP_BATCH = new Population() {
+    @Override
+    public String getName() {
+      return "PersonBatch.onHeap()";
+    }
+
+    @Override
+    public long create(final int size) {
+      population = fill(PersonBatch.onHeap(size));
+      return 0;
+    }
+  };
+
+  private static final Population OFF_HEAP_BATCH = new Population() {
+    @Override
+    public String getName() {
+      return "PersonBatch.offHeap()";
+    }
+
+    @Override
+    public long create(final int size) {
+      population = fill(PersonBatch.offHeap(size));
+      return size * 8L;
+    }
+  };
+
+  private static PersonBatch fill(final PersonBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      batch.setTemp(i, Person.NORMAL_TEMP);
+    }
+    return batch;
+  }
+
+  public static void main(final String[] args) {
+    final int[] sizes;
+    if (args.length == 0) {
+      sizes = DEFAULT_SIZES;
+    } else {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+
+    System.out.println(String.format("%-22s %12s %14s %14s %10s %10s",
+        "Storage", "People", "Heap bytes", "Off heap", "B/person", "Fill ms"));
+    for (final int size : sizes) {
+      for (final Population storage : new Population[] {
+          PERSON_OBJECTS, HEAP_BATCH, OFF_HEAP_BATCH }) {
+        measure(storage, size);
+      }
+    }
+  }
+
+  private static void measure(final Population storage, final int size) {
+    population = null;
+    final long before = usedHeap();
+    try {
+      final long start = System.nanoTime();
+      final long offHeap = storage.create(size);
+      final long millis = (System.nanoTime() - start) / 1000000;
+      final long heap = usedHeap() - before;
+      System.out.println(String.format("%-22s %,12d %,14d %,14d %10.1f %10d",
+          storage.getName(), size, heap, offHeap, (double) (heap + offHeap) / size, millis));
+    } catch (final OutOfMemoryError e) {
+      population = null;
+      System.out.println(String.format("%-22s %,12d doesn't fit (%s)",
+          storage.getName(), size, e.getMessage()));
+    } finally {
+      population = null;
+    }
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,27 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+/*
+ * Reads the temperature straight off the person, so it's as fast as a
+ * thermometer gets. Shared by the batch screening tests and benchmarks (not
+ * final, DoctorBatchScreeningTest spies on it).
+ */
+class ReadingThermometer implements BulkThermometer {
+  @Override
+  public double measureTemperature(final Person p) {
+    return p.temp;
+  }
+
+  @Override
+  public void measureTemperatures(final Person[] people, final int from, final int to,
+      final double[] temps) {
+    for (int i = from; i < to; i++) {
+      temps[i - from] = people[i].temp;
+    }
+  }
+
+  @Override
+  public void measureTemperatures(final PersonBatch people, final int from, final int to,
+      final double[] temps) {
+    people.getTemps(from, to, temps);
+  }
+}
@@ -0,0 +1,331 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Wraps a flaky thermometer (like the ActualThermometer) so the Doctor sees
+ * fewer failures and fewer slow measurements:
+ *
+ *   - a failed measurement is retried, up to maxAttempts in all
+ *   - after failuresToOpen calls in a row have failed every attempt, the
+ *     circuit opens: for the next openMillis calls fail straight away with a
+ *     CircuitOpenException, rather than waiting on a thermometer that's
+ *     broken. Then one call is let through to try it, and the circuit closes
+ *     again if that works.
+ *   - with an executor, a measurement slower than the hedgePercentile of
+ *     measurements so far gets a second one started alongside it, and
+ *     whichever finishes first is used. That's at most one extra measurement
+ *     for the slowest few percent, in return for cutting off their tail.
+ *
+ * Hedged measurements run on the executor, and a call waits for them with no
+ * timeout. So don't hedge on a bounded executor whose threads call
+ * measureTemperature() themselves: once every thread is in a call, there are
+ * none left to measure, and they all wait forever.
+ *
+ * When all attempts fail, the last failure is thrown, so callers see the same
+ * exceptions as before - just less often.
+ *
+ * Latencies (of whole calls, retries and all) and counts of what happened
+ * are kept for monitoring.
+ */
+final class ResilientThermometer implements Thermometer {
+  /*
+   * Below this many measurements, the percentile isn't worth hedging on.
+   */
+  static final int MIN_SAMPLES_TO_HEDGE = 100;
+
+  /*
+   * How often (in measurements) the hedging delay is worked out again.
+   */
+  private static final int HEDGE_DELAY_REFRESH = 128;
+
+  private static final int CLOSED = 0;
+  private static final int OPEN = 1;
+  private static final int HALF_OPEN = 2;
+
+  private final Thermometer delegate;
+  private final ExecutorService executor;
+  private final int maxAttempts;
+  private final int failuresToOpen;
+  private final long openNanos;
+  private final double hedgePercentile;
+
+  private final AtomicInteger circuit = new AtomicInteger(CLOSED);
+  private final AtomicInteger failuresInARow = new AtomicInteger();
+  private volatile long openUntil;
+
+  private final LatencyHistogram callLatencies = new LatencyHistogram();
+  private final LatencyHistogram measurementLatencies = new LatencyHistogram();
+  private volatile long hedgeDelayNanos = -1;
+  private volatile long hedgeDelaySamples;
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong failedCalls = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+  private final AtomicLong rejectedCalls = new AtomicLong();
+
+  /*
+   * 3 attempts, open after 5 failed calls in a row for a second, hedge after the
+   * 95th percentile (if there's an executor to hedge on).
+   */
+  public ResilientThermometer(final Thermometer delegate, final ExecutorService executor) {
+    this(delegate, executor, 3, 5, 1000, 0.95);
+  }
+
+  public ResilientThermometer(final Thermometer delegate, final ExecutorService executor,
+      final int maxAttempts, final int failuresToOpen, final long openMillis,
+      final double hedgePercentile) {
+    if (maxAttempts < 1 || failuresToOpen < 1 || openMillis < 0
+        || !(hedgePercentile > 0 && hedgePercentile <= 1)) {
+      throw new IllegalArgumentException("Bad settings: " + maxAttempts + " attempts, open after "
+          + failuresToOpen + " for " + openMillis + "ms, hedge at " + hedgePercentile);
+    }
+    this.delegate = delegate;
+    this.executor = executor;
+    this.maxAttempts = maxAttempts;
+    this.failuresToOpen = failuresToOpen;
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  @Override
+  public double measureTemperature(final Person p) {
+    calls.incrementAndGet();
+    final long start = System.nanoTime();
+    try {
+      RuntimeException lastFailure = null;
+      for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+        if (!allowRequest()) {
+          rejectedCalls.incrementAndGet();
+          throw lastFailure != null
+              ? lastFailure
+              : new CircuitOpenException("Thermometer keeps failing, not trying it for now");
+        }
+        if (attempt > 1) {
+          retries.incrementAndGet();
+        }
+
+        boolean measured = false;
+        try {
+          final double temp = attempt(p);
+          succeeded();
+          measured = true;
+          return temp;
+        } catch (final RuntimeException e) {
+          lastFailure = e;
+        } finally {
+          if (!measured) {
+            // Errors aren't retried, but still mustn't leave a trial hanging
+            attemptFailed();
+          }
+        }
+      }
+      callFailed();
+      throw lastFailure;
+    } catch (final RuntimeException e) {
+      failedCalls.incrementAndGet();
+      throw e;
+    } finally {
+      callLatencies.record(System.nanoTime() - start);
+    }
+  }
+
+  /*
+   * One measurement, hedged if it's taking too long.
+   */
+  private double attempt(final Person p) {
+    final long hedgeDelay = executor == null ? -1 : hedgeDelay();
+    if (hedgeDelay < 0) {
+      return timed(p);
+    }
+
+    final CompletionService<Double> measurements = new ExecutorCompletionService<Double>(executor);
+    final Callable<Double> measurement = new Callable<Double>() {
+      @Override
+      public Double call() {
+        return timed(p);
+      }
+    };
+
+    final Future<Double> first = measurements.submit(measurement);
+    Future<Double> second = null;
+    try {
+      Future<Double> done = measurements.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+      if (done == null) {
+        hedges.incrementAndGet();
+        second = measurements.submit(measurement);
+        done = measurements.take();
+      }
+
+      try {
+        final double temp = done.get();
+        if (done == second) {
+          hedgeWins.incrementAndGet();
+        }
+        return temp;
+      } catch (final ExecutionException e) {
+        if (second == null || e.getCause() instanceof Error) {
+          throw e;
+        }
+        // one of them failed, the other one might still work
+        final Future<Double> other = measurements.take();
+        final double temp = other.get();
+        if (other == second) {
+          hedgeWins.incrementAndGet();
+        }
+        return temp;
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while measuring", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } finally {
+      first.cancel(true);
+      if (second != null) {
+        second.cancel(true);
+      }
+    }
+  }
+
+  private double timed(final Person p) {
+    final long start = System.nanoTime();
+    final double temp = delegate.measureTemperature(p);
+    measurementLatencies.record(System.nanoTime() - start);
+    return temp;
+  }
+
+  /*
+   * How long to wait before hedging, or -1 not to yet.
+   */
+  private long hedgeDelay() {
+    final long samples = measurementLatencies.getCount();
+    if (samples < MIN_SAMPLES_TO_HEDGE) {
+      return -1;
+    }
+    // concurrent calls (and hedges, which record two) can step over any
+    // particular count, so go by how many there have been since
+    if (hedgeDelayNanos < 0 || samples - hedgeDelaySamples >= HEDGE_DELAY_REFRESH) {
+      hedgeDelaySamples = samples;
+      hedgeDelayNanos = measurementLatencies.getPercentile(hedgePercentile);
+    }
+    return hedgeDelayNanos;
+  }
+
+  private boolean allowRequest() {
+    switch (circuit.get()) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        // once it's been open long enough, one caller gets to try it
+        return System.nanoTime() - openUntil >= 0 && circuit.compareAndSet(OPEN, HALF_OPEN);
+      default:
+        return false; // someone's already trying it
+    }
+  }
+
+  private void succeeded() {
+    failuresInARow.set(0);
+    circuit.set(CLOSED);
+  }
+
+  /*
+   * A failed trial measurement opens the circuit again straight away.
+   */
+  private void attemptFailed() {
+    if (circuit.get() == HALF_OPEN) {
+      open();
+    }
+  }
+
+  /*
+   * Only calls failing every attempt count towards opening the circuit -
+   * failures that retries cover for are what retrying is for.
+   */
+  private void callFailed() {
+    if (failuresInARow.incrementAndGet() >= failuresToOpen) {
+      open();
+    }
+  }
+
+  private void open() {
+    openUntil = System.nanoTime() + openNanos;
+    circuit.set(OPEN);
+  }
+
+  public boolean isCircuitOpen() {
+    return circuit.get() != CLOSED;
+  }
+
+  /*
+   * Latency of calls to measureTemperature(), e.g. 0.99 for the p99.
+   */
+  public long getLatencyNanos(final double percentile) {
+    return callLatencies.getPercentile(percentile);
+  }
+
+  public long getCalls() {
+    return calls.get();
+  }
+
+  /*
+   * Calls which threw, whether after retrying or because the circuit was
+   * open.
+   */
+  public long getFailedCalls() {
+    return failedCalls.get();
+  }
+
+  public long getRetries() {
+    return retries.get();
+  }
+
+  public long getHedges() {
+    return hedges.get();
+  }
+
+  /*
+   * Hedges which came back before the measurement they were hedging.
+   */
+  public long getHedgeWins() {
+    return hedgeWins.get();
+  }
+
+  public long getRejectedCalls() {
+    return rejectedCalls.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d calls, p50 %.1f us, p99 %.1f us, %d failed, %d retries,"
+        + " %d hedges (%d won), %d rejected by the circuit",
+        getCalls(), getLatencyNanos(0.5) / 1e3, getLatencyNanos(0.99) / 1e3, getFailedCalls(),
+        getRetries(), getHedges(), getHedgeWins(), getRejectedCalls());
+  }
+}
+
+/*
+ * Thrown instead of measuring while the thermometer is thought to be broken.
+ */
+@SuppressWarnings("serial")
+class CircuitOpenException extends RuntimeException {
+  public CircuitOpenException(final String message) {
+    super(message);
+  }
+}
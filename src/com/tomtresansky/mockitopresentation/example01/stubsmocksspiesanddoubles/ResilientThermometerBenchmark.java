@@ -0,0 +1,79 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Latency and failures seen by the Doctor measuring through a thermometer
+ * that, like the ActualThermometer, runs out of mercury one time in three -
+ * and also takes 100x as long one time in a hundred. First straight, then
+ * through a ResilientThermometer.
+ *
+ * Not a Benchmark: the average isn't the interesting part, the tail is. The
+ * ActualThermometer itself isn't used since it prints on every measurement.
+ */
+public final class ResilientThermometerBenchmark {
+  private static final int MEASUREMENTS = 10000;
+  private static final long USUAL_NANOS = 50000;
+  private static final long SLOW_NANOS = 5000000;
+
+  private ResilientThermometerBenchmark() {
+    // only run from main
+  }
+
+  static final class FlakyThermometer implements Thermometer {
+    private final FaultInjector faults = FaultInjector.seeded(42, 1.0 / 3);
+    private final FaultInjector slowness = FaultInjector.seeded(43, 1.0 / 100);
+
+    @Override
+    public double measureTemperature(final Person p) {
+      // waiting on the hardware, not using the CPU
+      LockSupport.parkNanos(slowness.shouldFail() ? SLOW_NANOS : USUAL_NANOS);
+      if (Thread.interrupted()) {
+        throw new RuntimeException("Measurement cancelled");
+      }
+      if (faults.shouldFail()) {
+        throw new RuntimeException("Insufficient mercury!");
+      }
+      return p.temp;
+    }
+  }
+
+  private static void run(final String name, final Thermometer thermometer) {
+    final Doctor doctor = new Doctor();
+    final Person patient = new Person(Person.NORMAL_TEMP + 3);
+    final LatencyHistogram latencies = new LatencyHistogram();
+    int failures = 0;
+    for (int i = 0; i < MEASUREMENTS; i++) {
+      final long start = System.nanoTime();
+      try {
+        doctor.checkForFever(patient, thermometer);
+      } catch (final RuntimeException e) {
+        failures++;
+      }
+      latencies.record(System.nanoTime() - start);
+    }
+    System.out.println(String.format("%-30s p50 %8.1f us  p99 %8.1f us  p99.9 %8.1f us  %5.2f %% failed",
+        name, latencies.getPercentile(0.5) / 1e3, latencies.getPercentile(0.99) / 1e3,
+        latencies.getPercentile(0.999) / 1e3, 100.0 * failures / MEASUREMENTS));
+  }
+
+  public static void main(final String[] args) throws Exception {
+    run("FlakyThermometer", new FlakyThermometer());
+
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      final ResilientThermometer retrying = new ResilientThermometer(new FlakyThermometer(), null);
+      run("retrying", retrying);
+      System.out.println(retrying);
+
+      final ResilientThermometer hedging =
+          new ResilientThermometer(new FlakyThermometer(), executor);
+      run("retrying and hedging", hedging);
+      System.out.println(hedging);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ResilientThermometerTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final Person patient = new Person(Person.NORMAL_TEMP + 3);
+
+  @After
+  public void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRetriesFailedMeasurements() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(patient))
+        .thenThrow(new RuntimeException("Insufficient mercury!"))
+        .thenThrow(new RuntimeException("Insufficient mercury!"))
+        .thenReturn(Person.NORMAL_TEMP + 3);
+    final ResilientThermometer thermometer = new ResilientThermometer(mockThermometer, null);
+
+    assertTrue(new Doctor().checkForFever(patient, thermometer));
+    verify(mockThermometer, times(3)).measureTemperature(patient);
+    assertEquals(2, thermometer.getRetries());
+    assertEquals(0, thermometer.getFailedCalls());
+  }
+
+  @Test
+  public void testGivesUpAfterMaxAttempts() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(patient))
+        .thenThrow(new IllegalStateException("Insufficient mercury!"));
+    final ResilientThermometer thermometer =
+        new ResilientThermometer(mockThermometer, null, 2, 10, 1000, 0.95);
+
+    try {
+      thermometer.measureTemperature(patient);
+      fail();
+    } catch (final IllegalStateException e) {
+      assertEquals("Insufficient mercury!", e.getMessage());
+    }
+    verify(mockThermometer, times(2)).measureTemperature(patient);
+    assertEquals(1, thermometer.getFailedCalls());
+  }
+
+  @Test
+  public void testCircuitOpensAfterFailuresInARow() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(patient))
+        .thenThrow(new IllegalStateException("Insufficient mercury!"));
+    final ResilientThermometer thermometer =
+        new ResilientThermometer(mockThermometer, null, 1, 2, 60000, 0.95);
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        thermometer.measureTemperature(patient);
+        fail();
+      } catch (final IllegalStateException e) {
+        // expected, the thermometer's broken
+      }
+    }
+    assertTrue(thermometer.isCircuitOpen());
+
+    try {
+      thermometer.measureTemperature(patient);
+      fail();
+    } catch (final CircuitOpenException e) {
+      // didn't even try
+    }
+    verify(mockThermometer, times(2)).measureTemperature(patient);
+    assertEquals(1, thermometer.getRejectedCalls());
+  }
+
+  @Test
+  public void testCircuitClosesWhenTheThermometerWorksAgain() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(patient))
+        .thenThrow(new IllegalStateException("Insufficient mercury!"))
+        .thenReturn(Person.NORMAL_TEMP);
+    final ResilientThermometer thermometer =
+        new ResilientThermometer(mockThermometer, null, 1, 1, 0, 0.95);
+
+    try {
+      thermometer.measureTemperature(patient);
+      fail();
+    } catch (final IllegalStateException e) {
+      assertTrue(thermometer.isCircuitOpen());
+    }
+
+    // no time to wait with openMillis of 0, this is the trial call
+    assertEquals(Person.NORMAL_TEMP, thermometer.measureTemperature(patient), 0);
+    assertFalse(thermometer.isCircuitOpen());
+  }
+
+  @Test
+  public void testTrialThrowingAnErrorOpensTheCircuitAgain() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(patient))
+        .thenThrow(new IllegalStateException("Insufficient mercury!"))
+        .thenThrow(new AssertionError("Thermometer exploded!"))
+        .thenReturn(Person.NORMAL_TEMP);
+    final ResilientThermometer thermometer =
+        new ResilientThermometer(mockThermometer, null, 1, 1, 0, 0.95);
+
+    try {
+      thermometer.measureTemperature(patient);
+      fail();
+    } catch (final IllegalStateException e) {
+      assertTrue(thermometer.isCircuitOpen());
+    }
+    try {
+      thermometer.measureTemperature(patient);
+      fail();
+    } catch (final AssertionError e) {
+      assertEquals("Thermometer exploded!", e.getMessage());
+    }
+
+    // the failed trial opened the circuit again, rather than leaving it half
+    // open with nobody trying it
+    assertEquals(Person.NORMAL_TEMP, thermometer.measureTemperature(patient), 0);
+    assertFalse(thermometer.isCircuitOpen());
+  }
+
+  @Test
+  public void testSlowMeasurementsAreHedged() {
+    final AtomicInteger measurements = new AtomicInteger();
+    final Thermometer slowOnceThermometer = new Thermometer() {
+      @Override
+      public double measureTemperature(final Person p) {
+        if (measurements.incrementAndGet() == ResilientThermometer.MIN_SAMPLES_TO_HEDGE + 1) {
+          try {
+            Thread.sleep(60000);
+          } catch (final InterruptedException e) {
+            throw new IllegalStateException("Cancelled");
+          }
+        }
+        return p.temp;
+      }
+    };
+    final ResilientThermometer thermometer = new ResilientThermometer(slowOnceThermometer, executor);
+
+    for (int i = 0; i < ResilientThermometer.MIN_SAMPLES_TO_HEDGE; i++) {
+      thermometer.measureTemperature(patient);
+    }
+    final long start = System.nanoTime();
+    assertEquals(patient.temp, thermometer.measureTemperature(patient), 0);
+
+    assertTrue(System.nanoTime() - start < 30000000000L);
+    assertEquals(1, thermometer.getHedges());
+    // not necessarily won by the hedge: if the pool got to the hedge first,
+    // it's the hedge that got the slow measurement
+    assertEquals(ResilientThermometer.MIN_SAMPLES_TO_HEDGE + 2, measurements.get());
+  }
+
+  @Test
+  public void testHedgedErrorIsNotRetried() {
+    final AtomicInteger measurements = new AtomicInteger();
+    final Thermometer explodingThermometer = new Thermometer() {
+      @Override
+      public double measureTemperature(final Person p) {
+        if (measurements.incrementAndGet() > ResilientThermometer.MIN_SAMPLES_TO_HEDGE) {
+          throw new AssertionError("Thermometer exploded!");
+        }
+        return p.temp;
+      }
+    };
+    final ResilientThermometer thermometer =
+        new ResilientThermometer(explodingThermometer, executor);
+    for (int i = 0; i < ResilientThermometer.MIN_SAMPLES_TO_HEDGE; i++) {
+      thermometer.measureTemperature(patient);
+    }
+
+    try {
+      thermometer.measureTemperature(patient);
+      fail();
+    } catch (final AssertionError e) {
+      // the same Error, not wrapped in a RuntimeException
+      assertEquals("Thermometer exploded!", e.getMessage());
+    }
+    assertEquals(0, thermometer.getRetries());
+    assertEquals(0, thermometer.getFailedCalls());
+  }
+
+  @Test
+  public void testLatencyIsMeasured() {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(any(Person.class))).thenReturn(Person.NORMAL_TEMP);
+    final ResilientThermometer thermometer = new ResilientThermometer(mockThermometer, null);
+
+    for (int i = 0; i < 10; i++) {
+      thermometer.measureTemperature(patient);
+    }
+
+    assertEquals(10, thermometer.getCalls());
+    assertTrue(thermometer.getLatencyNanos(0.5) > 0);
+    assertTrue(thermometer.getLatencyNanos(0.99) >= thermometer.getLatencyNanos(0.5));
+  }
+
+  @Test
+  public void testHistogramBuckets() {
+    for (long nanos = 0; nanos < 100000; nanos += 7) {
+      final long highest = LatencyHistogram.highestIn(LatencyHistogram.bucketOf(nanos));
+      assertTrue(nanos + " -> " + highest, highest >= nanos && highest <= nanos * 1.125 + 1);
+    }
+    assertEquals(Long.MAX_VALUE,
+        LatencyHistogram.highestIn(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+  }
+}
@@ -0,0 +1,219 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Screens a queue of people with a thermometer that spends its time waiting
+ * on a device, not computing - so it pays to have many more measurements in
+ * flight than there are CPUs.
+ *
+ * Each checkForFever() is its own task on the executor, and up to
+ * "concurrency" of them run at once (across all screenings using this
+ * service). With a cached thread pool that's a thread per measurement in
+ * flight: a thread parked on I/O costs memory, not CPU, so the limit is
+ * there to keep that (and the load on the devices) bounded.
+ *
+ * A screening has a deadline. Whoever isn't screened by then is left out of
+ * the result, and measurements still in flight are cancelled (their threads
+ * are interrupted).
+ */
+final class ScreeningService {
+  private final Doctor doctor;
+  private final Thermometer thermometer;
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final int concurrency;
+
+  ScreeningService(final Doctor doctor, final Thermometer thermometer,
+      final ExecutorService executor, final int concurrency) {
+    if (concurrency <= 0) {
+      throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+    }
+    this.doctor = doctor;
+    this.thermometer = thermometer;
+    this.executor = executor;
+    this.concurrency = concurrency;
+    this.permits = new Semaphore(concurrency);
+  }
+
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /*
+   * Screens everyone it can before the timeout runs out.
+   */
+  public Screening screen(final Person[] people, final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    final Screening screening = new Screening(people.length);
+    final CountDownLatch measured = new CountDownLatch(people.length);
+    final Set<Measurement> inFlight =
+        Collections.newSetFromMap(new ConcurrentHashMap<Measurement, Boolean>());
+
+    try {
+      boolean finished = true;
+      for (int i = 0; i < people.length && finished; i++) {
+        // tryAcquire() takes a free permit however late it is
+        final long remaining = deadline - System.nanoTime();
+        finished = remaining > 0 && permits.tryAcquire(remaining, TimeUnit.NANOSECONDS);
+        if (finished) {
+          final Measurement measurement =
+              new Measurement(screening, people, i, inFlight, measured);
+          inFlight.add(measurement);
+          try {
+            executor.execute(measurement);
+          } catch (final RejectedExecutionException e) {
+            inFlight.remove(measurement);
+            permits.release();
+            throw e;
+          }
+        }
+      }
+      if (finished) {
+        finished = measured.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      }
+      screening.finish(!finished);
+    } finally {
+      screening.finish(true);
+      for (final Measurement measurement : inFlight) {
+        measurement.cancel(true);
+      }
+    }
+    return screening;
+  }
+
+  /*
+   * One checkForFever(). Gives its permit back once it's stopped running -
+   * cancelling only interrupts it, and a thermometer which ignores that keeps
+   * measuring (and keeps the permit) till it's done. A measurement cancelled
+   * before it started gives its permit back straight away.
+   */
+  private final class Measurement extends FutureTask<Void> {
+    private final Set<Measurement> inFlight;
+    private final CountDownLatch measured;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    Measurement(final Screening screening, final Person[] people, final int index,
+        final Set<Measurement> inFlight, final CountDownLatch measured) {
+      super(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            screening.record(index, doctor.checkForFever(people[index], thermometer));
+          } catch (final RuntimeException e) {
+            screening.failed();
+          }
+        }
+      }, null);
+      this.inFlight = inFlight;
+      this.measured = measured;
+    }
+
+    @Override
+    public void run() {
+      if (started.compareAndSet(false, true)) {
+        try {
+          super.run();
+        } finally {
+          permits.release();
+        }
+      }
+    }
+
+    @Override
+    protected void done() {
+      inFlight.remove(this);
+      if (started.compareAndSet(false, true)) {
+        // cancelled before it ran, and now it never will
+        permits.release();
+      }
+      measured.countDown();
+    }
+  }
+
+  /*
+   * What was found out about the people screened. Bit i of getFevers() is set
+   * when person i has a fever, so it only means anything where bit i of
+   * getScreened() is set too.
+   */
+  static final class Screening {
+    private final int size;
+    private final BitSet screened;
+    private final BitSet fevers;
+    private int failures;
+    private boolean finished;
+    private boolean timedOut;
+
+    Screening(final int size) {
+      this.size = size;
+      this.screened = new BitSet(size);
+      this.fevers = new BitSet(size);
+    }
+
+    synchronized void record(final int index, final boolean fever) {
+      if (!finished) {
+        screened.set(index);
+        fevers.set(index, fever);
+      }
+    }
+
+    synchronized void failed() {
+      if (!finished) {
+        failures++;
+      }
+    }
+
+    /*
+     * Nothing measured after this counts - it's too late.
+     */
+    synchronized void finish(final boolean late) {
+      if (!finished) {
+        finished = true;
+        timedOut = late;
+      }
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public synchronized BitSet getScreened() {
+      return (BitSet) screened.clone();
+    }
+
+    public synchronized BitSet getFevers() {
+      return (BitSet) fevers.clone();
+    }
+
+    /*
+     * Measurements which threw, rather than telling fever or not.
+     */
+    public synchronized int getFailures() {
+      return failures;
+    }
+
+    /*
+     * Whether the deadline passed before everyone was measured.
+     */
+    public synchronized boolean isTimedOut() {
+      return timedOut;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("%d of %d screened, %d fevers, %d failures%s", screened.cardinality(),
+          size, fevers.cardinality(), failures, timedOut ? ", timed out" : "");
+    }
+  }
+}
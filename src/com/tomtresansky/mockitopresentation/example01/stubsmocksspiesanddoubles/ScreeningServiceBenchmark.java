@@ -0,0 +1,81 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.ScreeningService.Screening;
+
+/*
+ * People screened per second with a thermometer which waits a millisecond on
+ * its device for every measurement: on a fixed pool of a thread per CPU, then
+ * on a cached pool with more and more measurements in flight.
+ *
+ * Then how much of a bigger queue gets screened before a deadline.
+ */
+public final class ScreeningServiceBenchmark {
+  private static final int PEOPLE = 5000;
+  private static final long DEVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private ScreeningServiceBenchmark() {
+    // only run from main
+  }
+
+  static final class DeviceThermometer implements Thermometer {
+    @Override
+    public double measureTemperature(final Person p) {
+      LockSupport.parkNanos(DEVICE_NANOS);
+      return p.temp;
+    }
+  }
+
+  private static Person[] people(final int count) {
+    final Person[] people = new Person[count];
+    for (int i = 0; i < count; i++) {
+      people[i] = new Person(Person.NORMAL_TEMP - 1 + (i % 5));
+    }
+    return people;
+  }
+
+  private static void run(final String name, final ExecutorService executor,
+      final int concurrency) throws InterruptedException {
+    final ScreeningService service =
+        new ScreeningService(new Doctor(), new DeviceThermometer(), executor, concurrency);
+    final Person[] people = people(PEOPLE);
+
+    // once to get the threads going, then timed
+    service.screen(people, 1, TimeUnit.MINUTES);
+    final long start = System.nanoTime();
+    final Screening screening = service.screen(people, 1, TimeUnit.MINUTES);
+    final long nanos = System.nanoTime() - start;
+
+    System.out.println(String.format("%-45s %11.0f people/s  (%s)", name,
+        screening.getScreened().cardinality() * 1e9 / nanos, screening));
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final int cpus = Runtime.getRuntime().availableProcessors();
+
+    final ExecutorService fixed = Executors.newFixedThreadPool(cpus);
+    try {
+      run("fixed pool of " + cpus + " threads", fixed, cpus);
+    } finally {
+      fixed.shutdownNow();
+    }
+
+    final ExecutorService cached = Executors.newCachedThreadPool();
+    try {
+      for (final int concurrency : new int[] { 16, 64, 256, 1024 }) {
+        run("cached pool, " + concurrency + " in flight", cached, concurrency);
+      }
+
+      final ScreeningService service =
+          new ScreeningService(new Doctor(), new DeviceThermometer(), cached, 256);
+      System.out.println(String.format("%-45s %s", "100ms deadline, 256 in flight",
+          service.screen(people(PEOPLE * 10), 100, TimeUnit.MILLISECONDS)));
+    } finally {
+      cached.shutdownNow();
+    }
+  }
+}
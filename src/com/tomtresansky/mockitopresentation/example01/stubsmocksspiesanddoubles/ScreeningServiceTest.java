@@ -0,0 +1,177 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.ScreeningService.Screening;
+
+public class ScreeningServiceTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  private static Person[] people(final int count) {
+    final Person[] people = new Person[count];
+    for (int i = 0; i < count; i++) {
+      people[i] = new Person(Person.NORMAL_TEMP - 1 + (i % 3));
+    }
+    return people;
+  }
+
+  /*
+   * Waits on the "device" to read the temperature, and keeps track of how
+   * many are being read at once.
+   */
+  private static final class WaitingThermometer implements Thermometer {
+    private final AtomicInteger measuring = new AtomicInteger();
+    private final AtomicInteger mostAtOnce = new AtomicInteger();
+    private final long millis;
+
+    WaitingThermometer(final long millis) {
+      this.millis = millis;
+    }
+
+    @Override
+    public double measureTemperature(final Person p) {
+      final int atOnce = measuring.incrementAndGet();
+      try {
+        int most;
+        do {
+          most = mostAtOnce.get();
+        } while (atOnce > most && !mostAtOnce.compareAndSet(most, atOnce));
+        Thread.sleep(millis);
+        return p.temp;
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException("Cancelled");
+      } finally {
+        measuring.decrementAndGet();
+      }
+    }
+  }
+
+  /*
+   * Measures until it's let go, interrupted or not - like a device driver
+   * call which never checks for interrupts.
+   */
+  private static final class StubbornThermometer implements Thermometer {
+    private final CountDownLatch letGo = new CountDownLatch(1);
+    private final AtomicInteger measuring = new AtomicInteger();
+
+    @Override
+    public double measureTemperature(final Person p) {
+      measuring.incrementAndGet();
+      boolean interrupted = false;
+      try {
+        while (true) {
+          try {
+            letGo.await();
+            return p.temp;
+          } catch (final InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      } finally {
+        measuring.decrementAndGet();
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testScreensEveryone() throws Exception {
+    final Person[] people = people(1000);
+    final ScreeningService service =
+        new ScreeningService(new Doctor(), new ReadingThermometer(), executor, 16);
+
+    final Screening screening = service.screen(people, 1, TimeUnit.MINUTES);
+
+    assertFalse(screening.isTimedOut());
+    assertEquals(people.length, screening.getScreened().cardinality());
+    assertEquals(new Doctor().checkForFevers(people, new ReadingThermometer()),
+        screening.getFevers());
+  }
+
+  @Test
+  public void testNoMoreThanTheConcurrencyAtOnce() throws Exception {
+    final WaitingThermometer thermometer = new WaitingThermometer(1);
+    final ScreeningService service = new ScreeningService(new Doctor(), thermometer, executor, 4);
+
+    assertFalse(service.screen(people(200), 1, TimeUnit.MINUTES).isTimedOut());
+    assertTrue(thermometer.mostAtOnce.get() <= 4);
+  }
+
+  @Test
+  public void testStopsAtTheDeadline() throws Exception {
+    final WaitingThermometer thermometer = new WaitingThermometer(60000);
+    final ScreeningService service = new ScreeningService(new Doctor(), thermometer, executor, 8);
+
+    final long start = System.nanoTime();
+    final Screening screening = service.screen(people(100), 100, TimeUnit.MILLISECONDS);
+
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+    assertTrue(screening.isTimedOut());
+    assertEquals(new BitSet(), screening.getScreened());
+    assertEquals(0, screening.getFailures());
+
+    // the measurements in flight were interrupted
+    for (int i = 0; i < 3000 && thermometer.measuring.get() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, thermometer.measuring.get());
+  }
+
+  @Test
+  public void testCancelledMeasurementKeepsItsPermitUntilItStops() throws Exception {
+    final StubbornThermometer thermometer = new StubbornThermometer();
+    final ScreeningService service = new ScreeningService(new Doctor(), thermometer, executor, 1);
+    assertTrue(service.screen(people(1), 100, TimeUnit.MILLISECONDS).isTimedOut());
+
+    // the first measurement ignored being cancelled, so there's no permit for
+    // another one
+    assertTrue(service.screen(people(1), 100, TimeUnit.MILLISECONDS).isTimedOut());
+    assertTrue(thermometer.measuring.get() <= 1);
+
+    // once it stops, its permit is back
+    thermometer.letGo.countDown();
+    assertFalse(service.screen(people(1), 1, TimeUnit.MINUTES).isTimedOut());
+  }
+
+  @Test
+  public void testCountsFailedMeasurements() throws Exception {
+    final Person[] people = people(10);
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(any(Person.class))).thenReturn(Person.NORMAL_TEMP);
+    when(mockThermometer.measureTemperature(people[3]))
+        .thenThrow(new RuntimeException("Insufficient mercury!"));
+    final ScreeningService service =
+        new ScreeningService(new Doctor(), mockThermometer, executor, 2);
+
+    final Screening screening = service.screen(people, 1, TimeUnit.MINUTES);
+
+    assertFalse(screening.isTimedOut());
+    assertEquals(1, screening.getFailures());
+    assertEquals(9, screening.getScreened().cardinality());
+    assertFalse(screening.getScreened().get(3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConcurrencyMustBePositive() {
+    new ScreeningService(new Doctor(), new ReadingThermometer(), executor, 0);
+  }
+}
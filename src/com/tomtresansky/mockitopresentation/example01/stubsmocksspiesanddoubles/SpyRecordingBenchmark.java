@@ -0,0 +1,61 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.DoctorUnitTestsWithSpies.SpyMegameter;
+import com.tomtresansky.mockitopresentation.spies.CallRecorder;
+
+/*
+ * Measures the cost of recording a call on a hand written spy: the slide's
+ * SpyMegameter, which adds a new Call to an ArrayList every time, against a
+ * CallRecorder.
+ */
+public final class SpyRecordingBenchmark {
+  private static final int CALLS_PER_ROUND = 4096;
+
+  private SpyRecordingBenchmark() {
+    // only run from main
+  }
+
+  static final class SpyMegameterRecording extends Benchmark {
+    private final Person person = new Person(Person.NORMAL_TEMP);
+    private SpyMegameter spyMegameter;
+
+    SpyMegameterRecording() {
+      super("spyMegameter.measureTemperature(...)", CALLS_PER_ROUND);
+    }
+
+    @Override
+    protected void setUpRound() {
+      spyMegameter = new DoctorUnitTestsWithSpies().new SpyMegameter();
+    }
+
+    @Override
+    protected Object runOnce() {
+      // not the double itself, boxing it would allocate
+      return spyMegameter.measureTemperature(person) > Person.NORMAL_TEMP
+          ? Boolean.TRUE
+          : Boolean.FALSE;
+    }
+  }
+
+  static final class CallRecorderRecording extends Benchmark {
+    private final Person person = new Person(Person.NORMAL_TEMP);
+    private final CallRecorder<Person> calls = new CallRecorder<Person>(CALLS_PER_ROUND,
+        "measureTemperature", "isInfected", "isBreathing");
+    private final int measureTemperature = calls.methodId("measureTemperature");
+
+    CallRecorderRecording() {
+      super("calls.record(measureTemperature, ...)", CALLS_PER_ROUND);
+    }
+
+    @Override
+    protected Object runOnce() {
+      calls.record(measureTemperature, person);
+      return calls;
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Benchmark.runAll(new SpyMegameterRecording(), new CallRecorderRecording());
+  }
+}
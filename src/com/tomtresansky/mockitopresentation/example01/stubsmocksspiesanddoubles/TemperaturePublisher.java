@@ -0,0 +1,193 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Monitors a ward: takes everyone's temperature in turn, round and round,
+ * for as long as a subscriber keeps asking for readings.
+ *
+ * Readings are only taken when they've been requested, so there's nothing
+ * to queue up on this side - when the subscriber falls behind, the
+ * thermometer just isn't used until it catches up.
+ *
+ * Each subscription takes its readings on the executor, one at a time. A
+ * measurement that fails is skipped (and counted), the next person is
+ * measured instead. Failed measurements don't use up any demand, so after
+ * maxFailuresInARow of them (three rounds of the ward by default) the
+ * thermometer is taken to be broken, and the subscriber gets onError()
+ * rather than a publisher measuring forever. An Error from the thermometer
+ * isn't a failed reading, it goes straight to onError().
+ */
+final class TemperaturePublisher implements Flow.Publisher<TemperaturePublisher.Reading> {
+  private final Thermometer thermometer;
+  private final Person[] ward;
+  private final Executor executor;
+  private final int maxFailuresInARow;
+  private final AtomicLong failedReadings = new AtomicLong();
+
+  TemperaturePublisher(final Thermometer thermometer, final Person[] ward,
+      final Executor executor) {
+    this(thermometer, ward, executor, 3 * ward.length);
+  }
+
+  TemperaturePublisher(final Thermometer thermometer, final Person[] ward,
+      final Executor executor, final int maxFailuresInARow) {
+    if (ward.length == 0) {
+      throw new IllegalArgumentException("Nobody on the ward to monitor");
+    }
+    if (maxFailuresInARow <= 0) {
+      throw new IllegalArgumentException("Must allow some failures: " + maxFailuresInARow);
+    }
+    this.thermometer = thermometer;
+    this.ward = ward.clone();
+    this.executor = executor;
+    this.maxFailuresInARow = maxFailuresInARow;
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super Reading> subscriber) {
+    subscriber.onSubscribe(new WardSubscription(subscriber));
+  }
+
+  /*
+   * Measurements which threw, over all subscriptions.
+   */
+  public long getFailedReadings() {
+    return failedReadings.get();
+  }
+
+  static final class Reading {
+    private final Person person;
+    private final double temp;
+
+    Reading(final Person person, final double temp) {
+      this.person = person;
+      this.temp = temp;
+    }
+
+    public Person getPerson() {
+      return person;
+    }
+
+    public double getTemp() {
+      return temp;
+    }
+
+    @Override
+    public String toString() {
+      return person + ": " + temp;
+    }
+  }
+
+  private final class WardSubscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super Reading> subscriber;
+
+    /*
+     * Readings requested but not sent yet, Long.MAX_VALUE for no limit.
+     */
+    private final AtomicLong demand = new AtomicLong();
+
+    /*
+     * Non-zero while run() is scheduled or running, so only one thread ever
+     * sends readings. Counts the requests it hasn't seen yet.
+     */
+    private final AtomicInteger work = new AtomicInteger();
+
+    private volatile boolean cancelled;
+    private volatile IllegalArgumentException badRequest;
+
+    /*
+     * Only used from run().
+     */
+    private int next;
+    private int failuresInARow;
+
+    WardSubscription(final Flow.Subscriber<? super Reading> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        badRequest = new IllegalArgumentException("Must request a positive number: " + n);
+      } else {
+        long current;
+        long updated;
+        do {
+          current = demand.get();
+          updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, updated));
+      }
+      if (work.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    @Override
+    public void run() {
+      int seen = 1;
+      do {
+        final long wanted = demand.get();
+        long sent = 0;
+        try {
+          while (sent != wanted && !cancelled && badRequest == null) {
+            final Person person = ward[next];
+            next = (next + 1) % ward.length;
+
+            final double temp;
+            try {
+              temp = thermometer.measureTemperature(person);
+            } catch (final RuntimeException e) {
+              failedReadings.incrementAndGet();
+              if (++failuresInARow == maxFailuresInARow) {
+                cancelled = true;
+                subscriber.onError(new IllegalStateException(
+                    "Thermometer failed " + failuresInARow + " readings in a row", e));
+              }
+              continue;
+            } catch (final Error e) {
+              // not a bad reading, nothing more is going to be measured
+              cancelled = true;
+              subscriber.onError(e);
+              break;
+            }
+            failuresInARow = 0;
+            send(new Reading(person, temp));
+            sent++;
+          }
+
+          if (badRequest != null && !cancelled) {
+            cancelled = true;
+            subscriber.onError(badRequest);
+          }
+        } finally {
+          // even when the subscriber throws, or later requests are never run
+          if (wanted != Long.MAX_VALUE) {
+            demand.addAndGet(-sent);
+          }
+          seen = work.addAndGet(-seen);
+        }
+      } while (seen != 0);
+    }
+
+    private void send(final Reading reading) {
+      boolean delivered = false;
+      try {
+        subscriber.onNext(reading);
+        delivered = true;
+      } finally {
+        if (!delivered) {
+          // the subscriber's broken, don't send it any more
+          cancelled = true;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.tomtresansky.mockitopresentation.example01.stubsmocksspiesanddoubles.TemperaturePublisher.Reading;
+
+public class WardMonitoringTest {
+  /*
+   * One thread, so waitForPublisher() knows when the publisher's done.
+   */
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Person healthy = new Person(Person.NORMAL_TEMP);
+  private final Person sick = new Person(Person.NORMAL_TEMP + 3);
+  private final Person[] ward = { healthy, sick };
+
+  @After
+  public void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  /*
+   * Reads the temperature straight off the person, counting how many times.
+   */
+  private static final class CountingThermometer implements Thermometer {
+    private final AtomicInteger measurements = new AtomicInteger();
+
+    @Override
+    public double measureTemperature(final Person p) {
+      measurements.incrementAndGet();
+      return p.temp;
+    }
+  }
+
+  private static void evaluateAtLeast(final FeverMonitor monitor, final long readings)
+      throws InterruptedException {
+    while (monitor.getEvaluated() < readings) {
+      assertTrue("No readings", monitor.evaluate(10, TimeUnit.SECONDS) > 0);
+    }
+  }
+
+  /*
+   * Waits for the publisher to send anything more it's going to: its work is
+   * queued on the executor's only thread, ahead of this.
+   */
+  private void waitForPublisher() throws Exception {
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        // nothing, just waiting for our turn
+      }
+    }).get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testFindsTheFever() throws Exception {
+    final FeverMonitor monitor = new Doctor().monitor(
+        new TemperaturePublisher(new CountingThermometer(), ward, executor), 8);
+
+    evaluateAtLeast(monitor, 20);
+    monitor.cancel();
+
+    assertEquals(Collections.singleton(sick), monitor.getFeverish());
+    assertNull(monitor.getError());
+  }
+
+  @Test
+  public void testFeverGoesAway() throws Exception {
+    final FeverMonitor monitor = new Doctor().monitor(
+        new TemperaturePublisher(new CountingThermometer(), ward, executor), 4);
+    evaluateAtLeast(monitor, 4);
+    assertTrue(monitor.isFeverish(sick));
+
+    sick.temp = Person.NORMAL_TEMP;
+    // anything still buffered was read before the recovery
+    evaluateAtLeast(monitor, monitor.getEvaluated() + 8);
+    monitor.cancel();
+
+    assertFalse(monitor.isFeverish(sick));
+  }
+
+  @Test
+  public void testSlowDoctorDoesNotFallFurtherBehind() throws Exception {
+    final CountingThermometer thermometer = new CountingThermometer();
+    final FeverMonitor monitor =
+        new Doctor().monitor(new TemperaturePublisher(thermometer, ward, executor), 16);
+
+    // the doctor's busy, only a buffer's worth gets measured
+    waitForPublisher();
+    assertEquals(16, thermometer.measurements.get());
+    assertEquals(16, monitor.getBuffered());
+
+    // each half a buffer evaluated gets half a buffer more (and those can
+    // arrive while evaluate() is still going)
+    final int evaluated = monitor.evaluate();
+    assertTrue(evaluated >= 16);
+    waitForPublisher();
+    assertEquals(16 + evaluated / 8 * 8, thermometer.measurements.get());
+    assertEquals(thermometer.measurements.get() - evaluated, monitor.getBuffered());
+    assertTrue(monitor.getBuffered() <= 16);
+    monitor.cancel();
+  }
+
+  @Test
+  public void testFailedReadingsAreSkipped() throws Exception {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(any(Person.class))).thenReturn(Person.NORMAL_TEMP);
+    when(mockThermometer.measureTemperature(sick))
+        .thenThrow(new RuntimeException("Insufficient mercury!"))
+        .thenReturn(sick.temp);
+    final TemperaturePublisher publisher =
+        new TemperaturePublisher(mockThermometer, ward, executor);
+    final FeverMonitor monitor = new Doctor().monitor(publisher, 4);
+
+    evaluateAtLeast(monitor, 4);
+    monitor.cancel();
+
+    assertEquals(1, publisher.getFailedReadings());
+    assertTrue(monitor.isFeverish(sick));
+  }
+
+  @Test
+  public void testBrokenThermometerIsAnError() throws Exception {
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(any(Person.class)))
+        .thenThrow(new RuntimeException("Insufficient mercury!"));
+    final TemperaturePublisher publisher =
+        new TemperaturePublisher(mockThermometer, ward, executor, 5);
+    final FeverMonitor monitor = new Doctor().monitor(publisher, 4);
+    waitForPublisher();
+
+    assertTrue(monitor.getError() instanceof IllegalStateException);
+    assertEquals(5, publisher.getFailedReadings());
+    verify(mockThermometer, times(5)).measureTemperature(any(Person.class));
+    assertEquals(0, monitor.getBuffered());
+  }
+
+  @Test
+  public void testThermometerErrorIsReportedToTheSubscriber() throws Exception {
+    final Error crash = new NoClassDefFoundError("ThermometerDriver");
+    final Thermometer mockThermometer = mock(Thermometer.class);
+    when(mockThermometer.measureTemperature(any(Person.class))).thenThrow(crash);
+    @SuppressWarnings("unchecked")
+    final Flow.Subscriber<Reading> mockSubscriber = mock(Flow.Subscriber.class);
+    final TemperaturePublisher publisher =
+        new TemperaturePublisher(mockThermometer, ward, executor);
+    publisher.subscribe(mockSubscriber);
+
+    final ArgumentCaptor<Flow.Subscription> subscription =
+        ArgumentCaptor.forClass(Flow.Subscription.class);
+    verify(mockSubscriber).onSubscribe(subscription.capture());
+    subscription.getValue().request(4);
+    verify(mockSubscriber, timeout(10000)).onError(crash);
+
+    // nothing more is measured, however much is asked for
+    subscription.getValue().request(4);
+    waitForPublisher();
+    verify(mockThermometer, times(1)).measureTemperature(any(Person.class));
+    verify(mockSubscriber, never()).onNext(any(Reading.class));
+    assertEquals(0, publisher.getFailedReadings());
+  }
+
+  @Test
+  public void testCancelledMonitorGetsNoMoreReadings() throws Exception {
+    final CountingThermometer thermometer = new CountingThermometer();
+    final FeverMonitor monitor =
+        new Doctor().monitor(new TemperaturePublisher(thermometer, ward, executor), 4);
+    waitForPublisher();
+
+    monitor.cancel();
+    monitor.evaluate();
+    waitForPublisher();
+
+    assertEquals(4, thermometer.measurements.get());
+    assertEquals(0, monitor.getBuffered());
+  }
+
+  @Test
+  public void testRequestingNothingIsAnError() throws Exception {
+    @SuppressWarnings("unchecked")
+    final Flow.Subscriber<Reading> mockSubscriber = mock(Flow.Subscriber.class);
+    new TemperaturePublisher(new CountingThermometer(), ward, executor).subscribe(mockSubscriber);
+
+    final ArgumentCaptor<Flow.Subscription> subscription =
+        ArgumentCaptor.forClass(Flow.Subscription.class);
+    verify(mockSubscriber).onSubscribe(subscription.capture());
+    subscription.getValue().request(0);
+
+    verify(mockSubscriber, timeout(10000)).onError(any(IllegalArgumentException.class));
+    verify(mockSubscriber, never()).onNext(any(Reading.class));
+  }
+}
@@ -1,5 +1,6 @@
 package com.tomtresansky.mockitopresentation.example02.mockingandstubbing;
 
+import static com.tomtresansky.mockitopresentation.mockito.ThrowsPreallocated.*;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -71,6 +72,37 @@ public class CornerCases {
           "The rocket blew up (as expected) --- call the Fire Dept.!");
     }
   }
+
+  @Test
+  public void testThrowingTheSameExceptionOverAndOver() {
+    final Rocket mockUnfueledRocket = mock(Rocket.class);
+    final Rocket2 mockBadRocket = mock(Rocket2.class);
+
+    // thenThrow()/doThrow() fill in (and filter) the stack trace on every
+    // call, which adds up when a test throws millions of times. These
+    // rethrow one exception, with no stack trace, instead
+    final UnfueledException unfueled = new UnfueledException();
+    when(mockUnfueledRocket.readyToLaunch()).thenAnswer(throwsPreallocated(unfueled));
+    doAnswer(throwsPreallocated(new ExplodeException())).when(mockBadRocket).launch();
+
+    int failedLaunches = 0;
+    for (int attempt = 0; attempt < 1000; attempt++) {
+      try {
+        mockUnfueledRocket.readyToLaunch();
+        fail();
+      } catch (final UnfueledException e) {
+        assertSame(unfueled, e);
+      }
+
+      try {
+        mockBadRocket.launch();
+        fail();
+      } catch (final ExplodeException e) {
+        failedLaunches++;
+      }
+    }
+    assertEquals(1000, failedLaunches);
+  }
 }
 
 @SuppressWarnings("serial")
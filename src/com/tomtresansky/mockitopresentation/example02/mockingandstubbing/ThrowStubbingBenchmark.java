@@ -0,0 +1,92 @@
+package com.tomtresansky.mockitopresentation.example02.mockingandstubbing;
+
+import static com.tomtresansky.mockitopresentation.mockito.ThrowsPreallocated.*;
+import static org.mockito.Mockito.*;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+import com.tomtresansky.mockitopresentation.example02.mockingandstubbing.CornerCases.Rocket;
+import com.tomtresansky.mockitopresentation.example02.mockingandstubbing.CornerCases.Rocket2;
+import com.tomtresansky.mockitopresentation.mockito.CountingInvocationContainer;
+
+/*
+ * Measures calling a method stubbed to throw, using the rockets from
+ * CornerCases, with Mockito's thenThrow()/doThrow() and with a preallocated,
+ * stackless exception from ThrowsPreallocated.
+ *
+ * The mocks are counting ones, so the cost of recording millions of
+ * invocations doesn't drown out the cost of the throw itself.
+ */
+public final class ThrowStubbingBenchmark {
+  private ThrowStubbingBenchmark() {
+    // only run from main
+  }
+
+  static final class ReadyToLaunch extends Benchmark {
+    private final boolean preallocated;
+    private Rocket mockUnfueledRocket;
+
+    ReadyToLaunch(final boolean preallocated) {
+      super(preallocated
+          ? "readyToLaunch() thenAnswer(throwsPreallocated(...))"
+          : "readyToLaunch() thenThrow(...)", 20000);
+      this.preallocated = preallocated;
+    }
+
+    @Override
+    protected void setUpRound() {
+      mockUnfueledRocket = CountingInvocationContainer.countOnly(mock(Rocket.class));
+      if (preallocated) {
+        when(mockUnfueledRocket.readyToLaunch())
+            .thenAnswer(throwsPreallocated(new UnfueledException()));
+      } else {
+        when(mockUnfueledRocket.readyToLaunch()).thenThrow(new UnfueledException());
+      }
+    }
+
+    @Override
+    protected Object runOnce() {
+      try {
+        return mockUnfueledRocket.readyToLaunch();
+      } catch (final UnfueledException e) {
+        return e;
+      }
+    }
+  }
+
+  static final class Launch extends Benchmark {
+    private final boolean preallocated;
+    private Rocket2 mockBadRocket;
+
+    Launch(final boolean preallocated) {
+      super(preallocated
+          ? "launch() doAnswer(throwsPreallocated(...))"
+          : "launch() doThrow(...)", 20000);
+      this.preallocated = preallocated;
+    }
+
+    @Override
+    protected void setUpRound() {
+      mockBadRocket = CountingInvocationContainer.countOnly(mock(Rocket2.class));
+      if (preallocated) {
+        doAnswer(throwsPreallocated(new ExplodeException())).when(mockBadRocket).launch();
+      } else {
+        doThrow(new ExplodeException()).when(mockBadRocket).launch();
+      }
+    }
+
+    @Override
+    protected Object runOnce() {
+      try {
+        mockBadRocket.launch();
+        return null;
+      } catch (final ExplodeException e) {
+        return e;
+      }
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Benchmark.runAll(new ReadyToLaunch(false), new ReadyToLaunch(true),
+        new Launch(false), new Launch(true));
+  }
+}
@@ -0,0 +1,72 @@
+package com.tomtresansky.mockitopresentation.example03.verification;
+
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mockito.verification.VerificationMode;
+
+import com.tomtresansky.mockitopresentation.example03.verification.BasicVerification.Warehouse;
+import com.tomtresansky.mockitopresentation.mockito.AwaitingVerification;
+import com.tomtresansky.mockitopresentation.mockito.ProxyMocks;
+
+/*
+ * How long after a worker thread ships something does verify() notice:
+ * Mockito's timeout() (which re-checks every 10ms) against
+ * AwaitingVerification.within() (which is woken up by the call).
+ */
+public final class AsyncVerificationBenchmark {
+  private static final int RUNS = 50;
+  private static final long SHIP_DELAY_MILLIS = 5;
+
+  private AsyncVerificationBenchmark() {
+    // only run from main
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+    try {
+      for (int round = 0; round < 2; round++) { // first round is warm up
+        final long polling = medianLatency(worker, timeout(5000));
+        final long waiting = medianLatency(worker, AwaitingVerification.within(5000));
+        if (round == 1) {
+          System.out.println(String.format("%-20s %10.3f ms after the call", "timeout(5000)",
+              polling / 1e6));
+          System.out.println(String.format("%-20s %10.3f ms after the call", "within(5000)",
+              waiting / 1e6));
+        }
+      }
+    } finally {
+      worker.shutdownNow();
+    }
+  }
+
+  /*
+   * Nanos from the mock being called until verify() returned.
+   */
+  private static long medianLatency(final ScheduledExecutorService worker,
+      final VerificationMode mode) {
+    final long[] latencies = new long[RUNS];
+    for (int run = 0; run < RUNS; run++) {
+      final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+      final AtomicLong shippedAt = new AtomicLong();
+      worker.schedule(new Runnable() {
+        @Override
+        public void run() {
+          shippedAt.set(System.nanoTime());
+          mockWarehouse.ship("hat");
+        }
+      }, SHIP_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+      verify(mockWarehouse, mode).ship("hat");
+      latencies[run] = System.nanoTime() - shippedAt.get();
+    }
+
+    Arrays.sort(latencies);
+    return latencies[RUNS / 2];
+  }
+}
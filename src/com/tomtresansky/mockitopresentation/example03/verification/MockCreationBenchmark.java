@@ -0,0 +1,94 @@
+package com.tomtresansky.mockitopresentation.example03.verification;
+
+import static org.mockito.Mockito.*;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+import com.tomtresansky.mockitopresentation.example03.verification.BasicVerification.Warehouse;
+import com.tomtresansky.mockitopresentation.mockito.ProxyMocks;
+
+/*
+ * Compares Mockito's cglib mocks to JDK proxy mocks from ProxyMocks: the cost
+ * of creating a mock, of calling it, and the number of classes each approach
+ * loads for the first mock of a type.
+ */
+public final class MockCreationBenchmark {
+  private MockCreationBenchmark() {
+    // only run from main
+  }
+
+  static final class CglibCreation extends Benchmark {
+    CglibCreation() {
+      super("mock(Warehouse.class)", 5000);
+    }
+
+    @Override
+    protected Object runOnce() {
+      return mock(Warehouse.class);
+    }
+  }
+
+  static final class ProxyCreation extends Benchmark {
+    ProxyCreation() {
+      super("ProxyMocks.mock(Warehouse.class)", 5000);
+    }
+
+    @Override
+    protected Object runOnce() {
+      return ProxyMocks.mock(Warehouse.class);
+    }
+  }
+
+  static final class ProxyInvocation extends Benchmark {
+    private Warehouse mockWarehouse;
+
+    ProxyInvocation() {
+      super("ProxyMocks.mock(Warehouse.class).stock(\"hat\")", 20000);
+    }
+
+    @Override
+    protected void setUpRound() {
+      mockWarehouse = ProxyMocks.mock(Warehouse.class);
+    }
+
+    @Override
+    protected Object runOnce() {
+      return mockWarehouse.stock("hat");
+    }
+  }
+
+  /*
+   * Some interfaces neither approach has seen yet.
+   */
+  interface Shipper {
+    void ship(String item);
+  }
+
+  interface Stocker {
+    void stock(String item);
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+
+    // Warm up both code paths, so only classes for the new types are counted
+    mock(Runnable.class);
+    ProxyMocks.mock(Comparable.class);
+
+    final long beforeCglib = classLoading.getTotalLoadedClassCount();
+    mock(Shipper.class).ship("hat");
+    final long cglibClasses = classLoading.getTotalLoadedClassCount() - beforeCglib;
+
+    final long beforeProxy = classLoading.getTotalLoadedClassCount();
+    ProxyMocks.mock(Stocker.class).stock("hat");
+    final long proxyClasses = classLoading.getTotalLoadedClassCount() - beforeProxy;
+
+    System.out.println("Classes loaded for first cglib mock of a type: " + cglibClasses);
+    System.out.println("Classes loaded for first proxy mock of a type: " + proxyClasses);
+
+    Benchmark.runAll(new CglibCreation(), new ProxyCreation(),
+        new VerificationBenchmark.MockInvocation(), new ProxyInvocation());
+  }
+}
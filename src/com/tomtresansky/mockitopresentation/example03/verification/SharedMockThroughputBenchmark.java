@@ -0,0 +1,47 @@
+package com.tomtresansky.mockitopresentation.example03.verification;
+
+import static org.mockito.Mockito.*;
+
+import com.tomtresansky.mockitopresentation.benchmarks.ConcurrentBenchmark;
+import com.tomtresansky.mockitopresentation.example03.verification.BasicVerification.Warehouse;
+import com.tomtresansky.mockitopresentation.mockito.StripedInvocationContainer;
+
+/*
+ * One Warehouse mock shared by 1 to 64 threads all calling stock("hat"), as
+ * in a load test, with Mockito's own invocation container and with the
+ * StripedInvocationContainer.
+ */
+public final class SharedMockThroughputBenchmark {
+  private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32, 64 };
+
+  private SharedMockThroughputBenchmark() {
+    // only run from main
+  }
+
+  static final class SharedStock extends ConcurrentBenchmark {
+    private final boolean striped;
+    private Warehouse mockWarehouse;
+
+    SharedStock(final boolean striped) {
+      super((striped ? "striped " : "") + "mockWarehouse.stock(\"hat\")");
+      this.striped = striped;
+    }
+
+    @Override
+    protected void setUp() {
+      mockWarehouse = mock(Warehouse.class);
+      if (striped) {
+        StripedInvocationContainer.stripe(mockWarehouse);
+      }
+    }
+
+    @Override
+    protected Object runOnce() {
+      return mockWarehouse.stock("hat");
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    ConcurrentBenchmark.runAll(THREAD_COUNTS, new SharedStock(false), new SharedStock(true));
+  }
+}
@@ -0,0 +1,63 @@
+package com.tomtresansky.mockitopresentation.example03.verification;
+
+import static org.mockito.Mockito.*;
+
+import com.tomtresansky.mockitopresentation.example03.verification.BasicVerification.Warehouse;
+import com.tomtresansky.mockitopresentation.mockito.CountingInvocationContainer;
+
+/*
+ * Heap kept alive by a mock which is called over and over, as in
+ * BasicVerification.testVerifyNumberOfCalls but millions of times.
+ *
+ * A normal mock keeps every invocation, so its heap grows with every call (it's
+ * only run for a fraction of the calls, it would run out of memory otherwise).
+ * A CountingInvocationContainer mock should stay flat.
+ *
+ * Run with -Dbenchmark.calls=... to change the number of calls (10 million by
+ * default).
+ */
+public final class SoakMemoryBenchmark {
+  private static final int CALLS = Integer.getInteger("benchmark.calls", 10000000);
+  private static final int CHECKPOINTS = 5;
+
+  private SoakMemoryBenchmark() {
+    // only run from main
+  }
+
+  public static void main(final String[] args) {
+    System.out.println("Recording mock:");
+    soak(mock(Warehouse.class), CALLS / 100);
+
+    System.out.println("Counting mock:");
+    final Warehouse countingWarehouse =
+        CountingInvocationContainer.countOnly(mock(Warehouse.class));
+    soak(countingWarehouse, CALLS);
+
+    final long start = System.nanoTime();
+    verify(countingWarehouse, times(CALLS)).stock("hat");
+    System.out.println(String.format("verify(times(%d)) took %d ms",
+        CALLS, (System.nanoTime() - start) / 1000000));
+  }
+
+  private static void soak(final Warehouse mockWarehouse, final int calls) {
+    final long before = usedHeap();
+    for (int checkpoint = 1; checkpoint <= CHECKPOINTS; checkpoint++) {
+      for (int i = 0; i < calls / CHECKPOINTS; i++) {
+        mockWarehouse.stock("hat");
+      }
+
+      final long retained = usedHeap() - before;
+      System.out.println(String.format("%,12d calls %,14d bytes retained %10.1f B/call",
+          checkpoint * (calls / CHECKPOINTS), retained,
+          (double) retained / (checkpoint * (calls / CHECKPOINTS))));
+    }
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,101 @@
+package com.tomtresansky.mockitopresentation.example03.verification;
+
+import static org.mockito.Mockito.*;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+import com.tomtresansky.mockitopresentation.example03.verification.BasicVerification.Warehouse;
+import com.tomtresansky.mockitopresentation.mockito.IndexedInvocationContainer;
+
+/*
+ * Measures the per-call cost of the two things BasicVerification does most:
+ * calling a method on a mock, and verifying the number of calls made - also
+ * against a mock with a large invocation log, with and without the
+ * IndexedInvocationContainer.
+ */
+public final class VerificationBenchmark {
+  private VerificationBenchmark() {
+    // only run from main
+  }
+
+  /*
+   * Every call on a mock is recorded, so start each round with a fresh mock.
+   */
+  static final class MockInvocation extends Benchmark {
+    private Warehouse mockWarehouse;
+
+    MockInvocation() {
+      super("mock(Warehouse.class).stock(\"hat\")", 20000);
+    }
+
+    @Override
+    protected void setUpRound() {
+      mockWarehouse = mock(Warehouse.class);
+    }
+
+    @Override
+    protected Object runOnce() {
+      return mockWarehouse.stock("hat");
+    }
+  }
+
+  /*
+   * Same setup as testVerifyNumberOfCalls: 3 hats stocked, verify times(3).
+   */
+  static final class VerifyTimes extends Benchmark {
+    private Warehouse mockWarehouse;
+
+    VerifyTimes() {
+      super("verify(mockWarehouse, times(3)).stock(\"hat\")", 20000);
+    }
+
+    @Override
+    protected void setUpRound() {
+      mockWarehouse = mock(Warehouse.class);
+      mockWarehouse.stock("hat");
+      mockWarehouse.stock("hat");
+      mockWarehouse.stock("hat");
+    }
+
+    @Override
+    protected Object runOnce() {
+      return verify(mockWarehouse, times(3)).stock("hat");
+    }
+  }
+
+  /*
+   * 100,000 calls spread over 100 items, verify the count of one of them.
+   */
+  static final class VerifyTimesLargeLog extends Benchmark {
+    private static final int ITEMS = 100;
+    private static final int CALLS = 100000;
+
+    private final boolean indexed;
+    private Warehouse mockWarehouse;
+
+    VerifyTimesLargeLog(final boolean indexed) {
+      super((indexed ? "indexed " : "") + "verify(times(1000)) of " + CALLS + " calls", 20);
+      this.indexed = indexed;
+    }
+
+    @Override
+    protected void setUpRound() {
+      mockWarehouse = mock(Warehouse.class);
+      if (indexed) {
+        IndexedInvocationContainer.install(mockWarehouse);
+      }
+      for (int i = 0; i < CALLS; i++) {
+        mockWarehouse.stock("item" + (i % ITEMS));
+      }
+    }
+
+    @Override
+    protected Object runOnce() {
+      return verify(mockWarehouse, times(CALLS / ITEMS)).stock("item7");
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Benchmark.runAll(new MockInvocation(), new VerifyTimes(),
+        new VerifyTimesLargeLog(false), new VerifyTimesLargeLog(true));
+  }
+}
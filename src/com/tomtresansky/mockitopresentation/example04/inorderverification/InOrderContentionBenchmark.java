@@ -0,0 +1,137 @@
+package com.tomtresansky.mockitopresentation.example04.inorderverification;
+
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.mockito.InOrder;
+import org.mockito.internal.progress.SequenceNumber;
+
+import com.tomtresansky.mockitopresentation.example04.inorderverification.InOrderVerifcation.Warehouse;
+import com.tomtresansky.mockitopresentation.mockito.IndexedInvocationContainer;
+import com.tomtresansky.mockitopresentation.mockito.InvocationSequence;
+import com.tomtresansky.mockitopresentation.mockito.ProxyMocks;
+
+/*
+ * 32 threads hammering the invocation sequence numbers inOrder() relies on,
+ * first on their own and then through stock()/ship() calls on two shared
+ * mocks, as in testInOrderAcrossMultipleMocks.
+ *
+ * Mockito 1.9.0 hands out sequence numbers from a synchronized counter, and
+ * plain mock() mocks - like the ones in testInOrderAcrossMultipleMocks -
+ * always take theirs from it. InvocationSequence is the lock-free one that
+ * proxy mocks, and cglib mocks with an IndexedInvocationContainer installed,
+ * are numbered from instead. The numbers only show contention on a machine
+ * with several cores.
+ *
+ * Run with -Dbenchmark.threads=... and -Dbenchmark.calls=... (per thread) to
+ * change the load.
+ */
+public final class InOrderContentionBenchmark {
+  private static final int THREADS = Integer.getInteger("benchmark.threads", 32);
+  private static final int CALLS = Integer.getInteger("benchmark.calls", 2000);
+  private static final int SEQUENCE_CALLS = CALLS * 500;
+
+  private static volatile int sink;
+
+  private InOrderContentionBenchmark() {
+    // only run from main
+  }
+
+  public static void main(final String[] args) throws Exception {
+    for (int round = 0; round < 2; round++) { // first round is warm up
+      final boolean print = round == 1;
+
+      report(print, "synchronized SequenceNumber.next()", SEQUENCE_CALLS, run(new Runnable() {
+        @Override
+        public void run() {
+          int local = 0;
+          for (int i = 0; i < SEQUENCE_CALLS; i++) {
+            local += SequenceNumber.next();
+          }
+          sink += local;
+        }
+      }));
+
+      report(print, "lock-free InvocationSequence.next()", SEQUENCE_CALLS, run(new Runnable() {
+        @Override
+        public void run() {
+          int local = 0;
+          for (int i = 0; i < SEQUENCE_CALLS; i++) {
+            local += InvocationSequence.next();
+          }
+          sink += local;
+        }
+      }));
+
+      shipAndStock(print, "stock()/ship() on 2 shared mocks",
+          mock(Warehouse.class), mock(Warehouse.class));
+      shipAndStock(print, "stock()/ship() on 2 shared indexed mocks",
+          IndexedInvocationContainer.install(mock(Warehouse.class)),
+          IndexedInvocationContainer.install(mock(Warehouse.class)));
+      shipAndStock(print, "stock()/ship() on 2 shared proxy mocks",
+          ProxyMocks.mock(Warehouse.class), ProxyMocks.mock(Warehouse.class));
+    }
+  }
+
+  private static void shipAndStock(final boolean print, final String name,
+      final Warehouse mockWarehouse1, final Warehouse mockWarehouse2)
+      throws InterruptedException {
+    report(print, name, CALLS * 2, run(new Runnable() {
+      @Override
+      public void run() {
+        final String item = Thread.currentThread().getName();
+        for (int i = 0; i < CALLS; i++) {
+          mockWarehouse1.ship(item);
+          mockWarehouse2.stock(item);
+        }
+      }
+    }));
+
+    // Ordering still holds for each thread's calls
+    final InOrder warehouseOrdering = inOrder(mockWarehouse1, mockWarehouse2);
+    warehouseOrdering.verify(mockWarehouse1).ship("worker-0");
+    warehouseOrdering.verify(mockWarehouse2).stock("worker-0");
+  }
+
+  /*
+   * Runs the work on every thread at once, returning the wall clock nanos.
+   */
+  private static long run(final Runnable work) throws InterruptedException {
+    final CountDownLatch ready = new CountDownLatch(THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    final Thread[] threads = new Thread[THREADS];
+    for (int i = 0; i < THREADS; i++) {
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          ready.countDown();
+          try {
+            start.await();
+          } catch (final InterruptedException e) {
+            return;
+          }
+          work.run();
+        }
+      }, "worker-" + i);
+      threads[i].start();
+    }
+
+    ready.await();
+    final long startNanos = System.nanoTime();
+    start.countDown();
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    return System.nanoTime() - startNanos;
+  }
+
+  private static void report(final boolean print, final String name, final int callsPerThread,
+      final long nanos) {
+    if (print) {
+      final long calls = (long) callsPerThread * THREADS;
+      System.out.println(String.format("%-40s %3d threads %12.1f ns/op %,14.0f ops/s",
+          name, THREADS, (double) nanos / calls, calls * 1e9 / nanos));
+    }
+  }
+}
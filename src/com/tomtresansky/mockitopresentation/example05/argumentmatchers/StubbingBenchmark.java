@@ -0,0 +1,85 @@
+package com.tomtresansky.mockitopresentation.example05.argumentmatchers;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+import com.tomtresansky.mockitopresentation.mockito.IndexedInvocationContainer;
+
+/*
+ * Measures the cost of looking up a stubbed answer, using the same stubbing as
+ * BasicArgumentMatchersForStubbing.testSingleArgumentMatcher, and of looking
+ * one up among thousands of stubbed keys with and without the
+ * IndexedInvocationContainer.
+ */
+public final class StubbingBenchmark {
+  private StubbingBenchmark() {
+    // only run from main
+  }
+
+  static final class StubbedLookup extends Benchmark {
+    private Map<Integer, String> mockNumbers;
+    private int next;
+
+    StubbedLookup() {
+      super("when(mockNumbers.get(...)).thenReturn(...) lookup", 20000);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void setUpRound() {
+      mockNumbers = mock(Map.class);
+      when(mockNumbers.get(2)).thenReturn("This is two!");
+      when(mockNumbers.get(anyInt())).thenReturn("Here is a whole number.");
+      when(mockNumbers.get(eq(0))).thenReturn("This is 0!");
+      when(mockNumbers.get(eq(Math.PI))).thenReturn("This is Pi!");
+    }
+
+    @Override
+    protected Object runOnce() {
+      // Cycle through 0..3, hitting both the eq() and the anyInt() stubbing
+      return mockNumbers.get(next++ & 3);
+    }
+  }
+
+  static final class LargeStubTableLookup extends Benchmark {
+    private static final int KEYS = 2000;
+
+    private final boolean indexed;
+    private Map<Integer, String> mockNumbers;
+    private int next;
+
+    LargeStubTableLookup(final boolean indexed) {
+      super((indexed ? "indexed " : "") + KEYS + " stubbed keys lookup", 2000);
+      this.indexed = indexed;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void setUpRound() {
+      mockNumbers = mock(Map.class);
+      if (indexed) {
+        IndexedInvocationContainer.install(mockNumbers);
+      }
+
+      when(mockNumbers.get(anyInt())).thenReturn("Here is a whole number.");
+      for (int i = 0; i < KEYS; i++) {
+        when(mockNumbers.get(i)).thenReturn("This is " + i + "!");
+      }
+    }
+
+    @Override
+    protected Object runOnce() {
+      // Keys spread over the whole table, plus some unstubbed ones
+      next = (next + 7919) % (KEYS + KEYS / 10);
+      return mockNumbers.get(next);
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Benchmark.runAll(new StubbedLookup(),
+        new LargeStubTableLookup(false), new LargeStubTableLookup(true));
+  }
+}
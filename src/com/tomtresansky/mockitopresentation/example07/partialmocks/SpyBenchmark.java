@@ -0,0 +1,58 @@
+package com.tomtresansky.mockitopresentation.example07.partialmocks;
+
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tomtresansky.mockitopresentation.benchmarks.Benchmark;
+
+/*
+ * Measures the cost of calling through a spy to the real object, as in
+ * Spies.testSpying, against calling the real object directly.
+ */
+public final class SpyBenchmark {
+  private SpyBenchmark() {
+    // only run from main
+  }
+
+  static final class SpyDispatch extends Benchmark {
+    private List<String> spyList;
+
+    SpyDispatch() {
+      super("spy(new ArrayList<String>()).contains(...)", 20000);
+    }
+
+    @Override
+    protected void setUpRound() {
+      spyList = spy(new ArrayList<String>());
+      spyList.add("Venus");
+    }
+
+    @Override
+    protected Object runOnce() {
+      return spyList.contains("Venus");
+    }
+  }
+
+  /*
+   * Baseline - the real list, no spy in the way.
+   */
+  static final class DirectDispatch extends Benchmark {
+    private final List<String> list = new ArrayList<String>();
+
+    DirectDispatch() {
+      super("new ArrayList<String>().contains(...)", 20000);
+      list.add("Venus");
+    }
+
+    @Override
+    protected Object runOnce() {
+      return list.contains("Venus");
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Benchmark.runAll(new SpyDispatch(), new DirectDispatch());
+  }
+}
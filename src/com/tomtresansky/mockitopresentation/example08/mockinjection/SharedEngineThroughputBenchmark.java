@@ -0,0 +1,48 @@
+package com.tomtresansky.mockitopresentation.example08.mockinjection;
+
+import static org.mockito.Mockito.*;
+
+import com.tomtresansky.mockitopresentation.benchmarks.ConcurrentBenchmark;
+import com.tomtresansky.mockitopresentation.mockito.StripedInvocationContainer;
+
+/*
+ * One stubbed Engine mock, as in MockAnnotationExample, shared by 1 to 64
+ * threads all asking for its RPMs - with Mockito's own invocation container
+ * and with the StripedInvocationContainer.
+ */
+public final class SharedEngineThroughputBenchmark {
+  private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32, 64 };
+
+  private SharedEngineThroughputBenchmark() {
+    // only run from main
+  }
+
+  static final class SharedRPMs extends ConcurrentBenchmark {
+    private final boolean striped;
+    private Engine mockStartedEngine;
+
+    SharedRPMs(final boolean striped) {
+      super((striped ? "striped " : "") + "mockStartedEngine.getRPMs()");
+      this.striped = striped;
+    }
+
+    @Override
+    protected void setUp() {
+      mockStartedEngine = mock(Engine.class);
+      if (striped) {
+        StripedInvocationContainer.stripe(mockStartedEngine);
+      }
+      when(mockStartedEngine.isRunning()).thenReturn(true);
+      when(mockStartedEngine.getRPMs()).thenReturn(2000);
+    }
+
+    @Override
+    protected Object runOnce() {
+      return mockStartedEngine.getRPMs();
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    ConcurrentBenchmark.runAll(THREAD_COUNTS, new SharedRPMs(false), new SharedRPMs(true));
+  }
+}
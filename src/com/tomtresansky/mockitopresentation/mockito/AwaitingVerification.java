@@ -0,0 +1,62 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.exceptions.base.MockitoException;
+import org.mockito.internal.verification.api.VerificationData;
+import org.mockito.verification.VerificationMode;
+
+/*
+ * Verification for calls made from other threads: waits up to a deadline for
+ * the verification to pass, rather than sleeping for the worst case before
+ * verify().
+ *
+ * Mockito's own timeout() re-checks every 10ms. This one waits on the mock's
+ * IndexedInvocationContainer instead, which wakes it up as soon as the mock is
+ * invoked - so the test carries on right after the interaction happens. As
+ * the container is needed, it only works on mocks from ProxyMocks or with
+ * IndexedInvocationContainer.install()'ed.
+ *
+ *   verify(mockWarehouse, within(500)).ship("hat");
+ *   verify(mockWarehouse, within(500, times(2))).ship("hat");
+ *
+ * Fails with the last verification failure when the time is up. Note modes
+ * like never() and atMost() pass straight away, they don't wait out the
+ * deadline.
+ */
+public final class AwaitingVerification implements VerificationMode {
+  private final long timeoutNanos;
+  private final VerificationMode mode;
+
+  private AwaitingVerification(final long timeoutMillis, final VerificationMode mode) {
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.mode = mode;
+  }
+
+  public static VerificationMode within(final long timeoutMillis) {
+    return within(timeoutMillis, times(1));
+  }
+
+  public static VerificationMode within(final long timeoutMillis, final VerificationMode mode) {
+    return new AwaitingVerification(timeoutMillis, mode);
+  }
+
+  long getTimeoutNanos() {
+    return timeoutNanos;
+  }
+
+  VerificationMode getMode() {
+    return mode;
+  }
+
+  /*
+   * Only called for mocks without an IndexedMockHandler.
+   */
+  @Override
+  public void verify(final VerificationData data) {
+    throw new MockitoException("within() needs a mock from ProxyMocks.mock() or one passed to"
+        + " IndexedInvocationContainer.install(), use timeout() for other mocks");
+  }
+}
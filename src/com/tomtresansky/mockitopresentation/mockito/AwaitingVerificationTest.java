@@ -0,0 +1,116 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static com.tomtresansky.mockitopresentation.mockito.AwaitingVerification.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.exceptions.base.MockitoException;
+import org.mockito.exceptions.verification.TooLittleActualInvocations;
+import org.mockito.exceptions.verification.WantedButNotInvoked;
+
+public class AwaitingVerificationTest {
+  /*
+   * Same shape as the warehouses in the verification examples.
+   */
+  interface Warehouse {
+    int stock(String item);
+    int ship(String item);
+  }
+
+  private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void stopWorker() {
+    worker.shutdownNow();
+  }
+
+  private void shipLater(final Warehouse warehouse, final String item, final long delayMillis) {
+    worker.schedule(new Runnable() {
+      @Override
+      public void run() {
+        warehouse.ship(item);
+      }
+    }, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void testFinishesAsSoonAsTheCallIsMade() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+    shipLater(mockWarehouse, "hat", 100);
+
+    final long start = System.nanoTime();
+    verify(mockWarehouse, within(10000)).ship("hat");
+
+    // Nowhere near the 10s deadline
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+  }
+
+  @Test
+  public void testWaitsForTheWantedNumberOfCalls() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+    shipLater(mockWarehouse, "hat", 50);
+    shipLater(mockWarehouse, "scarf", 60);
+    shipLater(mockWarehouse, "hat", 100);
+
+    verify(mockWarehouse, within(10000, times(2))).ship("hat");
+    verify(mockWarehouse, within(10000)).ship("scarf");
+  }
+
+  @Test
+  public void testFailsWhenTimeIsUp() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+    shipLater(mockWarehouse, "hat", 10);
+
+    final long start = System.nanoTime();
+    try {
+      verify(mockWarehouse, within(200)).ship("boots");
+      fail();
+    } catch (final AssertionError e) {
+      // nothing was shipped, or only hats
+    }
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+
+    try {
+      verify(mockWarehouse, within(100, times(2))).ship("hat");
+      fail();
+    } catch (final TooLittleActualInvocations e) {
+      // only one hat
+    }
+  }
+
+  @Test
+  public void testInterruptedWhileWaiting() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+
+    Thread.currentThread().interrupt();
+    try {
+      verify(mockWarehouse, within(10000)).ship("hat");
+      fail();
+    } catch (final MockitoException e) {
+      assertTrue(e.getCause() instanceof InterruptedException);
+    }
+    // still interrupted (and cleared for the next test)
+    assertTrue(Thread.interrupted());
+  }
+
+  @Test(expected = WantedButNotInvoked.class)
+  public void testInstalledCglibMocks() {
+    final Warehouse mockWarehouse = IndexedInvocationContainer.install(mock(Warehouse.class));
+    shipLater(mockWarehouse, "hat", 10);
+
+    verify(mockWarehouse, within(10000)).ship("hat");
+    verify(mockWarehouse, within(50)).stock("hat");
+  }
+
+  @Test(expected = MockitoException.class)
+  public void testPlainMocksAreRejected() {
+    final Warehouse mockWarehouse = mock(Warehouse.class);
+    verify(mockWarehouse, within(100)).ship("hat");
+  }
+}
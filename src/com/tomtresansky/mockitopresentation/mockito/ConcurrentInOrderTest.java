@@ -0,0 +1,141 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.progress.SequenceNumber;
+import org.mockito.internal.util.MockUtil;
+
+public class ConcurrentInOrderTest {
+  private static final int THREADS = 8;
+  private static final int CALLS_PER_THREAD = 200;
+
+  /*
+   * Same shape as the warehouses in the in order examples.
+   */
+  interface Warehouse {
+    int stock(String item);
+    int ship(String item);
+  }
+
+  /*
+   * Runs the work on every thread at once.
+   */
+  private static void runTogether(final Runnable work) throws InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    for (int thread = 0; thread < THREADS; thread++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          work.run();
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSequenceNumbersAreUniqueAndIncreasingUnderContention() throws Exception {
+    final Set<Integer> numbers = Collections.synchronizedSet(new HashSet<Integer>());
+    final AtomicInteger outOfOrder = new AtomicInteger();
+
+    runTogether(new Runnable() {
+      @Override
+      public void run() {
+        int last = 0;
+        for (int i = 0; i < CALLS_PER_THREAD * 10; i++) {
+          final int number = InvocationSequence.next();
+          if (number <= last) {
+            outOfOrder.incrementAndGet();
+          }
+          last = number;
+          numbers.add(number);
+        }
+      }
+    });
+
+    assertEquals(THREADS * CALLS_PER_THREAD * 10, numbers.size());
+    assertEquals(0, outOfOrder.get());
+  }
+
+  @Test
+  public void testInstalledCglibMocksAreNumberedFromTheSequence() {
+    final Warehouse mockWarehouse = IndexedInvocationContainer.install(mock(Warehouse.class));
+
+    final int before = InvocationSequence.next();
+    final int mockitoBefore = SequenceNumber.next();
+    mockWarehouse.ship("bananas");
+    final int mockitoAfter = SequenceNumber.next();
+    final int after = InvocationSequence.next();
+
+    final int number = new MockUtil().getMockHandler(mockWarehouse).getInvocationContainer()
+        .getInvocations().get(0).getSequenceNumber();
+    assertTrue(before < number && number < after);
+    // and Mockito's synchronized counter wasn't touched
+    assertEquals(mockitoBefore + 1, mockitoAfter);
+  }
+
+  @Test
+  public void testInOrderAcrossMultipleMocksAndThreads() throws Exception {
+    // A cglib mock numbered from the same sequence as the proxy mock
+    final Warehouse mockWarehouse1 = IndexedInvocationContainer.install(mock(Warehouse.class));
+    final Warehouse mockWarehouse2 = ProxyMocks.mock(Warehouse.class);
+
+    // Each thread ships its own items from the first warehouse to the second
+    final AtomicInteger threadNumbers = new AtomicInteger();
+    runTogether(new Runnable() {
+      @Override
+      public void run() {
+        final int threadNumber = threadNumbers.getAndIncrement();
+        for (int i = 0; i < CALLS_PER_THREAD; i++) {
+          final String item = "item" + threadNumber + "-" + i;
+          mockWarehouse1.ship(item);
+          mockWarehouse2.stock(item);
+        }
+      }
+    });
+
+    // Every invocation got its own number...
+    final Set<Integer> sequenceNumbers = new HashSet<Integer>();
+    for (final Warehouse mockWarehouse : new Warehouse[] { mockWarehouse1, mockWarehouse2 }) {
+      final List<Invocation> invocations =
+          new MockUtil().getMockHandler(mockWarehouse).getInvocationContainer().getInvocations();
+      for (final Invocation invocation : invocations) {
+        sequenceNumbers.add(invocation.getSequenceNumber());
+      }
+    }
+    assertEquals(2 * THREADS * CALLS_PER_THREAD, sequenceNumbers.size());
+
+    // ...and each thread's calls are in order
+    for (int thread = 0; thread < THREADS; thread++) {
+      final InOrder warehouseOrdering = inOrder(mockWarehouse1, mockWarehouse2);
+      for (int i = 0; i < CALLS_PER_THREAD; i++) {
+        final String item = "item" + thread + "-" + i;
+        warehouseOrdering.verify(mockWarehouse1).ship(item);
+        warehouseOrdering.verify(mockWarehouse2).stock(item);
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.invocation.InvocationMatcher;
+import org.mockito.stubbing.Answer;
+
+/*
+ * An invocation container for mocks which are called far too often to keep
+ * every call, e.g. in soak tests.
+ *
+ * Mockito keeps each invocation (with the stack trace of where it happened)
+ * until the test ends. Here only the first invocation of each method and
+ * arguments combination is kept, along with a count of how many times it has
+ * been made since - so memory depends on the number of different calls, not
+ * the number of calls. Verification sees each kept invocation repeated count
+ * times, so times(), atLeast(), atMost(), never() and verifyNoMoreInteractions()
+ * all work as usual. A call made again after its invocation has been verified
+ * starts a new count, so verifyNoMoreInteractions() still spots it.
+ *
+ * Arguments are told apart by value if they're strings, boxed primitives,
+ * enums or classes, by identity otherwise (which is what Mockito would have
+ * recorded anyway).
+ *
+ * Not for inOrder() verification: the repeats share one sequence number. And
+ * verifying still walks every counted call, and Mockito copies the matching
+ * ones into a (short lived) list, so verifying ten million calls is slow.
+ */
+public class CountingInvocationContainer extends IndexedInvocationContainer {
+  private static final long serialVersionUID = 1L;
+
+  /*
+   * All guarded by this.
+   */
+  private final Map<List<Object>, CountedInvocation> countsByCall =
+      new HashMap<List<Object>, CountedInvocation>();
+  private final List<CountedInvocation> counts = new ArrayList<CountedInvocation>();
+  private CountedInvocation lastCounted;
+
+  /*
+   * Makes the (freshly created) mock count its invocations rather than keep
+   * them. Has to happen again after it is reset().
+   */
+  public static <T> T countOnly(final T mock) {
+    return install(mock, new CountingInvocationContainer());
+  }
+
+  @Override
+  public synchronized void setInvocationForPotentialStubbing(final InvocationMatcher invocation) {
+    count(invocation.getInvocation());
+    resetInvocationForPotentialStubbing(invocation);
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public void addAnswer(final Answer answer) {
+    synchronized (this) {
+      uncountLast(); // it was the call being stubbed
+    }
+    addAnswer(answer, false);
+  }
+
+  @Override
+  public synchronized boolean hasInvocationForPotentialStubbing() {
+    return !counts.isEmpty();
+  }
+
+  @Override
+  public synchronized List<Invocation> getInvocations() {
+    final List<Invocation> invocations = new ArrayList<Invocation>(counts.size());
+    final List<Integer> repeats = new ArrayList<Integer>(counts.size());
+    for (final CountedInvocation counted : counts) {
+      if (!counted.invocation.isToString()) {
+        invocations.add(counted.invocation);
+        repeats.add(counted.count);
+      }
+    }
+    return new RepeatedInvocations(invocations, repeats);
+  }
+
+  @Override
+  synchronized List<Invocation> candidatesFor(final InvocationMatcher wanted) {
+    final List<Invocation> invocations = new ArrayList<Invocation>();
+    final List<Integer> repeats = new ArrayList<Integer>();
+    for (final CountedInvocation counted : counts) {
+      if (wanted.hasSameMethod(counted.invocation)) {
+        invocations.add(counted.invocation);
+        repeats.add(counted.count);
+      }
+    }
+    return new RepeatedInvocations(invocations, repeats);
+  }
+
+  private void count(final Invocation invocation) {
+    final List<Object> call = callOf(invocation);
+    CountedInvocation counted = countsByCall.get(call);
+    if (counted == null || counted.invocation.isVerified()) {
+      counted = new CountedInvocation(call, invocation);
+      countsByCall.put(call, counted);
+      counts.add(counted);
+    }
+    counted.count++;
+    lastCounted = counted;
+    invocationRecorded();
+  }
+
+  private void uncountLast() {
+    lastCounted.count--;
+    if (lastCounted.count == 0) {
+      // only just added
+      counts.remove(counts.size() - 1);
+      countsByCall.remove(lastCounted.call);
+    }
+    lastCounted = null;
+  }
+
+  private static List<Object> callOf(final Invocation invocation) {
+    final Object[] arguments = invocation.getArguments();
+    final Object[] call = new Object[arguments.length + 1];
+    call[0] = invocation.getMethod();
+    for (int i = 0; i < arguments.length; i++) {
+      call[i + 1] = isHashable(arguments[i]) ? arguments[i] : new Identity(arguments[i]);
+    }
+    return Arrays.asList(call);
+  }
+
+  private static final class CountedInvocation {
+    final List<Object> call;
+    final Invocation invocation;
+    int count;
+
+    CountedInvocation(final List<Object> call, final Invocation invocation) {
+      this.call = call;
+      this.invocation = invocation;
+    }
+  }
+
+  /*
+   * An argument compared by identity.
+   */
+  private static final class Identity {
+    private final Object object;
+
+    Identity(final Object object) {
+      this.object = object;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      return other instanceof Identity && ((Identity) other).object == object;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(object);
+    }
+  }
+
+  /*
+   * Each invocation repeated as many times as it was counted, without
+   * actually storing the repeats.
+   */
+  private static final class RepeatedInvocations extends AbstractList<Invocation> {
+    private final List<Invocation> invocations;
+    private final int[] ends;
+
+    RepeatedInvocations(final List<Invocation> invocations, final List<Integer> repeats) {
+      this.invocations = invocations;
+      ends = new int[repeats.size()];
+      int end = 0;
+      for (int i = 0; i < ends.length; i++) {
+        end += repeats.get(i);
+        ends[i] = end;
+      }
+    }
+
+    @Override
+    public Invocation get(final int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+      }
+      final int found = Arrays.binarySearch(ends, index + 1);
+      return invocations.get(found >= 0 ? found : -found - 1);
+    }
+
+    @Override
+    public int size() {
+      return ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.exceptions.verification.NoInteractionsWanted;
+import org.mockito.exceptions.verification.TooLittleActualInvocations;
+import org.mockito.exceptions.verification.TooManyActualInvocations;
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.util.MockUtil;
+
+public class CountingInvocationContainerTest {
+  /*
+   * Same shape as the warehouses in the verification examples.
+   */
+  interface Warehouse {
+    int stock(String item);
+    int ship(Object order);
+    void clear();
+  }
+
+  @Test
+  public void testCountingModes() {
+    final Warehouse mockWarehouse = CountingInvocationContainer.countOnly(mock(Warehouse.class));
+
+    for (int i = 0; i < 1000; i++) {
+      mockWarehouse.stock("hat");
+    }
+    mockWarehouse.stock("scarf");
+
+    verify(mockWarehouse, times(1000)).stock("hat");
+    verify(mockWarehouse, atLeast(999)).stock("hat");
+    verify(mockWarehouse, atMost(1000)).stock("hat");
+    verify(mockWarehouse).stock("scarf");
+    verify(mockWarehouse, never()).clear();
+    verifyNoMoreInteractions(mockWarehouse);
+  }
+
+  @Test
+  public void testWrongCountsStillFail() {
+    final Warehouse mockWarehouse = CountingInvocationContainer.countOnly(mock(Warehouse.class));
+    mockWarehouse.stock("hat");
+    mockWarehouse.stock("hat");
+
+    try {
+      verify(mockWarehouse, times(3)).stock("hat");
+      fail();
+    } catch (final TooLittleActualInvocations e) {
+      // only 2
+    }
+    try {
+      verify(mockWarehouse, atMost(1)).stock("hat");
+      fail();
+    } catch (final org.mockito.exceptions.base.MockitoAssertionError e) {
+      // 2 is too many
+    }
+    try {
+      verify(mockWarehouse).stock("hat");
+      fail();
+    } catch (final TooManyActualInvocations e) {
+      // 2 is too many
+    }
+  }
+
+  @Test(expected = NoInteractionsWanted.class)
+  public void testCallsAfterVerificationAreNoticed() {
+    final Warehouse mockWarehouse = CountingInvocationContainer.countOnly(mock(Warehouse.class));
+    mockWarehouse.stock("hat");
+    verify(mockWarehouse).stock("hat");
+
+    mockWarehouse.stock("hat");
+    verifyNoMoreInteractions(mockWarehouse);
+  }
+
+  @Test
+  public void testStubbingIsNotCounted() {
+    final Warehouse mockWarehouse = CountingInvocationContainer.countOnly(mock(Warehouse.class));
+    when(mockWarehouse.stock("hat")).thenReturn(1, 2);
+
+    assertEquals(1, mockWarehouse.stock("hat"));
+    assertEquals(2, mockWarehouse.stock("hat"));
+    verify(mockWarehouse, times(2)).stock("hat");
+  }
+
+  @Test
+  public void testOnlyDistinctCallsAreKept() {
+    final Warehouse mockWarehouse = CountingInvocationContainer.countOnly(mock(Warehouse.class));
+    final List<String> order = new ArrayList<String>();
+    for (int i = 0; i < 1000; i++) {
+      mockWarehouse.stock("hat");
+      mockWarehouse.ship(order);
+    }
+    // Equal, but not the same argument
+    mockWarehouse.ship(new ArrayList<String>());
+
+    final List<Invocation> invocations =
+        new MockUtil().getMockHandler(mockWarehouse).getInvocationContainer().getInvocations();
+    assertEquals(2001, invocations.size());
+    assertSame(invocations.get(0), invocations.get(999));
+    assertSame(invocations.get(1000), invocations.get(1999));
+    assertNotSame(invocations.get(1999), invocations.get(2000));
+  }
+}
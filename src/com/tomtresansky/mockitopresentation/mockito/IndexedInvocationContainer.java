@@ -0,0 +1,405 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.Matcher;
+import org.mockito.cglib.proxy.Factory;
+import org.mockito.internal.InvocationNotifierHandler;
+import org.mockito.internal.MockHandler;
+import org.mockito.internal.MockHandlerInterface;
+import org.mockito.internal.creation.MethodInterceptorFilter;
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.invocation.InvocationMatcher;
+import org.mockito.internal.invocation.StubInfo;
+import org.mockito.internal.matchers.Equals;
+import org.mockito.internal.matchers.MatcherDecorator;
+import org.mockito.internal.progress.ThreadSafeMockingProgress;
+import org.mockito.internal.stubbing.InvocationContainerImpl;
+import org.mockito.internal.stubbing.StubbedInvocationMatcher;
+import org.mockito.internal.util.MockUtil;
+import org.mockito.stubbing.Answer;
+
+/*
+ * A Mockito invocation container which finds stubbed answers without walking
+ * every stubbing.
+ *
+ * Mockito checks each stubbing of a mock in turn, newest first, until one
+ * matches - fine for the handful in the examples, slow for a fake carrying
+ * thousands of stubbed keys. Here stubbings whose arguments are all plain
+ * values (when(mockNumbers.get(2)), get(eq(0))...) are kept in a hash table per
+ * method, so those are found straight away. Stubbings using any other matchers
+ * (anyInt(), argThat()...) are still walked in order, but only the ones newer
+ * than the exact hit, so the last stubbing still wins.
+ *
+ * Only values whose equality can't change after stubbing (strings, boxed
+ * primitives, enums, classes and null) are hashed; anything else is treated
+ * like any other matcher.
+ *
+ * Invocations are indexed the same way, by method and by exact arguments, so
+ * verify() with times(), never(), atLeast() and atMost() only looks at the
+ * invocations which can match (see IndexedMockHandler). Recording an
+ * invocation also wakes up any AwaitingVerification waiting for one.
+ *
+ * Use install() on a freshly created mock. ProxyMocks installs it on all of
+ * its mocks. Mocks with it installed number their invocations from the
+ * InvocationSequence, so inOrder() can't mix them with plain Mockito mocks.
+ */
+public class IndexedInvocationContainer extends InvocationContainerImpl {
+  private static final long serialVersionUID = 1L;
+
+  private static final Field MOCK_HANDLER = field(InvocationNotifierHandler.class, "mockHandler");
+  private static final Field WANTED = field(Equals.class, "wanted");
+
+  /*
+   * All guarded by this.
+   */
+  private final Map<String, MethodStubs> stubsByMethod = new HashMap<String, MethodStubs>();
+  private long stubbingCount;
+  private final Map<List<Object>, List<Invocation>> invocationsByMethod =
+      new HashMap<List<Object>, List<Invocation>>();
+  private final Map<List<Object>, List<Invocation>> invocationsByCall =
+      new HashMap<List<Object>, List<Invocation>>();
+  private Invocation lastInvocation;
+  private long invocationCount;
+
+  public IndexedInvocationContainer() {
+    super(new ThreadSafeMockingProgress());
+  }
+
+  /*
+   * Makes the mock look up its stubbings and invocations through the index.
+   * Has to happen before the mock is used, and again after it is reset().
+   */
+  public static <T> T install(final T mock) {
+    return install(mock, new IndexedInvocationContainer());
+  }
+
+  static <T> T install(final T mock, final IndexedInvocationContainer container) {
+    new MockUtil().getMockHandler(mock); // throws NotAMockException for anything else
+    final Factory factory = (Factory) mock;
+    final MethodInterceptorFilter filter = (MethodInterceptorFilter) factory.getCallback(0);
+    installOn(filter, container);
+    if (!(filter instanceof SequencedMethodInterceptorFilter)) {
+      factory.setCallback(0, new SequencedMethodInterceptorFilter(filter.getHandler(),
+          indexedHandlerOf(filter.getHandler()).getMockSettings()));
+    }
+    return mock;
+  }
+
+  /*
+   * Whether the mock's invocations are handled (and numbered) through an
+   * IndexedMockHandler.
+   */
+  static boolean isInstalled(final Object mock) {
+    final MockHandlerInterface<Object> handler = new MockUtil().getMockHandler(mock);
+    return handler instanceof InvocationNotifierHandler && indexedHandlerOf(handler) != null;
+  }
+
+  private static IndexedMockHandler<?> indexedHandlerOf(final Object notifierHandler) {
+    try {
+      final Object handler = MOCK_HANDLER.get(notifierHandler);
+      return handler instanceof IndexedMockHandler ? (IndexedMockHandler<?>) handler : null;
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static void installOn(final MethodInterceptorFilter filter) {
+    installOn(filter, new IndexedInvocationContainer());
+  }
+
+  /*
+   * Swaps the mock's handler for one using the container.
+   */
+  private static void installOn(final MethodInterceptorFilter filter,
+      final IndexedInvocationContainer container) {
+    try {
+      final MockHandler<?> current = (MockHandler<?>) MOCK_HANDLER.get(filter.getHandler());
+      final InvocationContainerImpl currentContainer =
+          (InvocationContainerImpl) current.getInvocationContainer();
+      if (currentContainer.getClass() == container.getClass()) {
+        return;
+      }
+      if (currentContainer.hasInvocationForPotentialStubbing()
+          || !currentContainer.getStubbedInvocations().isEmpty()) {
+        throw new IllegalStateException("Install before using the mock");
+      }
+      MOCK_HANDLER.set(filter.getHandler(),
+          new IndexedMockHandler<Object>(current.getMockSettings(), container));
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException("Couldn't install the indexed container", e);
+    }
+  }
+
+  @Override
+  public synchronized void setInvocationForPotentialStubbing(final InvocationMatcher invocation) {
+    super.setInvocationForPotentialStubbing(invocation);
+
+    final Invocation added = invocation.getInvocation();
+    addTo(invocationsByMethod, methodKey(added.getMethod()), added);
+    final List<Object> call = lookupKey(added);
+    if (call != null) {
+      addTo(invocationsByCall, call, added);
+    }
+    lastInvocation = added;
+    invocationRecorded();
+  }
+
+  /*
+   * Wakes up anyone waiting for an invocation, must hold the lock on this.
+   */
+  void invocationRecorded() {
+    invocationCount++;
+    notifyAll();
+  }
+
+  /*
+   * Number of invocations recorded so far (stubbing calls included).
+   */
+  synchronized long getInvocationCount() {
+    return invocationCount;
+  }
+
+  /*
+   * Waits until more than the seen number of invocations have been recorded,
+   * returning false if that didn't happen in time.
+   */
+  synchronized boolean awaitInvocation(final long seen, final long timeoutNanos)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + timeoutNanos;
+    while (invocationCount == seen) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public void addAnswer(final Answer answer) {
+    synchronized (this) {
+      // The last invocation was the one being stubbed, it's always the last
+      // one in its lists too
+      removeLast(invocationsByMethod.get(methodKey(lastInvocation.getMethod())));
+      final List<Object> call = lookupKey(lastInvocation);
+      if (call != null) {
+        removeLast(invocationsByCall.get(call));
+      }
+      lastInvocation = null;
+    }
+    super.addAnswer(answer);
+  }
+
+  /*
+   * The invocations which might match the wanted one, in the order they were
+   * made, or null if they can't be narrowed down.
+   */
+  synchronized List<Invocation> candidatesFor(final InvocationMatcher wanted) {
+    if (wanted.getMethod().isVarArgs()) {
+      return null;
+    }
+
+    final List<Object> call = exactKey(wanted);
+    final List<Invocation> candidates = call == null
+        ? invocationsByMethod.get(methodKey(wanted.getMethod()))
+        : invocationsByCall.get(call);
+    return candidates == null
+        ? new ArrayList<Invocation>()
+        : new ArrayList<Invocation>(candidates);
+  }
+
+  private static void addTo(final Map<List<Object>, List<Invocation>> index,
+      final List<Object> key, final Invocation invocation) {
+    List<Invocation> invocations = index.get(key);
+    if (invocations == null) {
+      invocations = new ArrayList<Invocation>();
+      index.put(key, invocations);
+    }
+    invocations.add(invocation);
+  }
+
+  private static void removeLast(final List<Invocation> invocations) {
+    invocations.remove(invocations.size() - 1);
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public synchronized void addAnswer(final Answer answer, final boolean isConsecutive) {
+    super.addAnswer(answer, isConsecutive);
+    if (isConsecutive) {
+      return; // added to the newest stubbing, which is already indexed
+    }
+
+    final StubbedInvocationMatcher stubbing = getStubbedInvocations().get(0);
+    final IndexedStubbing indexed = new IndexedStubbing(stubbing, stubbingCount++);
+
+    final String methodName = stubbing.getMethod().getName();
+    MethodStubs methodStubs = stubsByMethod.get(methodName);
+    if (methodStubs == null) {
+      methodStubs = new MethodStubs();
+      stubsByMethod.put(methodName, methodStubs);
+    }
+
+    final List<Object> key = exactKey(stubbing);
+    if (key == null) {
+      methodStubs.matching.addFirst(indexed);
+    } else {
+      methodStubs.exact.put(key, indexed);
+    }
+  }
+
+  @Override
+  public synchronized StubbedInvocationMatcher findAnswerFor(final Invocation invocation) {
+    return findIndexedAnswerFor(invocation);
+  }
+
+  /*
+   * The actual lookup, callers must keep stubbings from being added meanwhile.
+   */
+  final StubbedInvocationMatcher findIndexedAnswerFor(final Invocation invocation) {
+    final MethodStubs methodStubs = stubsByMethod.get(invocation.getMethod().getName());
+    if (methodStubs == null) {
+      return null;
+    }
+
+    final List<Object> key = methodStubs.exact.isEmpty() ? null : lookupKey(invocation);
+    final IndexedStubbing exactHit = key == null ? null : methodStubs.exact.get(key);
+
+    StubbedInvocationMatcher found = exactHit == null ? null : exactHit.stubbing;
+    for (final IndexedStubbing candidate : methodStubs.matching) {
+      if (exactHit != null && candidate.order < exactHit.order) {
+        break; // older than the exact hit, which wins
+      }
+      if (candidate.stubbing.matches(invocation)) {
+        found = candidate.stubbing;
+        break;
+      }
+    }
+
+    if (found != null) {
+      found.markStubUsed(invocation);
+      invocation.markStubbed(new StubInfo(found));
+    }
+    return found;
+  }
+
+  /*
+   * The key for a stubbing (or verification) made only of Equals matchers on
+   * hashable values, otherwise null.
+   */
+  private static List<Object> exactKey(final InvocationMatcher stubbing) {
+    final Method method = stubbing.getMethod();
+    if (method.isVarArgs()) {
+      return null; // arguments are matched expanded or not, keep it simple
+    }
+
+    final List<?> matchers = stubbing.getMatchers();
+    final Object[] values = new Object[matchers.size()];
+    for (int i = 0; i < values.length; i++) {
+      final Matcher<?> matcher = (Matcher<?>) matchers.get(i);
+      final Matcher<?> actualMatcher = matcher instanceof MatcherDecorator
+          ? ((MatcherDecorator) matcher).getActualMatcher()
+          : matcher;
+      if (actualMatcher.getClass() != Equals.class) {
+        return null;
+      }
+
+      values[i] = wantedOf((Equals) actualMatcher);
+      if (!isHashable(values[i])) {
+        return null;
+      }
+    }
+    return callKey(method, values);
+  }
+
+  /*
+   * The key an exact stubbing of this invocation would have, or null if there
+   * can't be one.
+   */
+  private static List<Object> lookupKey(final Invocation invocation) {
+    final Method method = invocation.getMethod();
+    if (method.isVarArgs()) {
+      return null;
+    }
+
+    final Object[] arguments = invocation.getArguments();
+    for (final Object argument : arguments) {
+      if (!isHashable(argument)) {
+        return null; // can't be equal to any hashed value
+      }
+    }
+    return callKey(method, arguments);
+  }
+
+  /*
+   * Methods are told apart the same way Mockito does, by name and parameter
+   * types (Method.equals() would also compare the declaring class).
+   */
+  private static List<Object> methodKey(final Method method) {
+    return Arrays.<Object>asList(method.getName(), Arrays.asList(method.getParameterTypes()));
+  }
+
+  private static List<Object> callKey(final Method method, final Object[] values) {
+    final List<Object> key = new ArrayList<Object>(values.length + 1);
+    key.add(methodKey(method));
+    key.addAll(Arrays.asList(values));
+    return key;
+  }
+
+  static boolean isHashable(final Object value) {
+    return value == null
+        || value instanceof String
+        || value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte
+        || value instanceof Double || value instanceof Float
+        || value instanceof Character || value instanceof Boolean
+        || value instanceof Enum || value instanceof Class;
+  }
+
+  private static Object wantedOf(final Equals matcher) {
+    try {
+      return WANTED.get(matcher);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static Field field(final Class<?> clazz, final String name) {
+    try {
+      final Field field = clazz.getDeclaredField(name);
+      field.setAccessible(true);
+      return field;
+    } catch (final NoSuchFieldException e) {
+      throw new IllegalStateException("Unsupported Mockito version", e);
+    }
+  }
+
+  /*
+   * The stubbings of one method name (overloads included).
+   */
+  private static final class MethodStubs {
+    final Map<List<Object>, IndexedStubbing> exact = new HashMap<List<Object>, IndexedStubbing>();
+    final LinkedList<IndexedStubbing> matching = new LinkedList<IndexedStubbing>();
+  }
+
+  private static final class IndexedStubbing {
+    final StubbedInvocationMatcher stubbing;
+    final long order;
+
+    IndexedStubbing(final StubbedInvocationMatcher stubbing, final long order) {
+      this.stubbing = stubbing;
+      this.order = order;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.exceptions.verification.NeverWantedButInvoked;
+import org.mockito.exceptions.verification.NoInteractionsWanted;
+import org.mockito.exceptions.verification.junit.ArgumentsAreDifferent;
+import org.mockito.internal.creation.DelegatingMethod;
+import org.mockito.internal.creation.MockSettingsImpl;
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.invocation.InvocationMatcher;
+import org.mockito.internal.matchers.Any;
+import org.mockito.internal.matchers.LocalizedMatcher;
+import org.mockito.internal.util.MockUtil;
+
+public class IndexedInvocationContainerTest {
+  interface Roster {
+    String nameOf(int number);
+    String nameOf(String position);
+  }
+
+  @Test
+  public void testSameAnswersAsSingleArgumentMatcherExample() {
+    @SuppressWarnings("unchecked")
+    final Map<Integer, String> mockNumbers = IndexedInvocationContainer.install(mock(Map.class));
+    assertTrue(new MockUtil().getMockHandler(mockNumbers).getInvocationContainer()
+        instanceof IndexedInvocationContainer);
+
+    // Same stubbing as BasicArgumentMatchersForStubbing.testSingleArgumentMatcher
+    when(mockNumbers.get(2)).thenReturn("This is two!");
+    when(mockNumbers.get(anyInt())).thenReturn("Here is a whole number.");
+    when(mockNumbers.get(eq(0))).thenReturn("This is 0!");
+    when(mockNumbers.get(eq(Math.PI))).thenReturn("This is Pi!");
+
+    assertEquals("This is 0!", mockNumbers.get(0));
+    assertEquals("Here is a whole number.", mockNumbers.get(2)); // anyInt() came later
+    assertEquals("Here is a whole number.", mockNumbers.get(17));
+    assertEquals("This is Pi!", mockNumbers.get(Math.PI));
+    // Mockito 1.9's anyInt() actually matches anything
+    assertEquals("Here is a whole number.", mockNumbers.get("Not a number"));
+  }
+
+  @Test
+  public void testLastStubbingWins() {
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+
+    when(mockRoster.nameOf(anyInt())).thenReturn("Anyone");
+    when(mockRoster.nameOf(7)).thenReturn("Seven");
+    when(mockRoster.nameOf(7)).thenReturn("Lucky seven");
+    assertEquals("Lucky seven", mockRoster.nameOf(7));
+    assertEquals("Anyone", mockRoster.nameOf(8));
+
+    when(mockRoster.nameOf(anyInt())).thenReturn("Anyone at all");
+    assertEquals("Anyone at all", mockRoster.nameOf(7));
+  }
+
+  @Test
+  public void testOverloadsAreKeptApart() {
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+
+    when(mockRoster.nameOf(1)).thenReturn("Number one");
+    when(mockRoster.nameOf("1")).thenReturn("Position one");
+
+    assertEquals("Number one", mockRoster.nameOf(1));
+    assertEquals("Position one", mockRoster.nameOf("1"));
+    assertNull(mockRoster.nameOf(null));
+  }
+
+  @Test
+  public void testConsecutiveAnswersAndNullArguments() {
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+
+    when(mockRoster.nameOf((String) isNull())).thenReturn("Nobody");
+    when(mockRoster.nameOf(3)).thenReturn("First", "Second");
+
+    assertEquals("Nobody", mockRoster.nameOf(null));
+    assertEquals("First", mockRoster.nameOf(3));
+    assertEquals("Second", mockRoster.nameOf(3));
+    assertEquals("Second", mockRoster.nameOf(3));
+  }
+
+  @Test
+  public void testProxyMocksStayIndexedAfterReset() {
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+    when(mockRoster.nameOf(1)).thenReturn("Number one");
+
+    reset(mockRoster);
+    assertNull(mockRoster.nameOf(1));
+    assertTrue(new MockUtil().getMockHandler(mockRoster).getInvocationContainer()
+        instanceof IndexedInvocationContainer);
+
+    when(mockRoster.nameOf(1)).thenReturn("New number one");
+    assertEquals("New number one", mockRoster.nameOf(1));
+  }
+
+  @Test
+  public void testCountingVerifications() {
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+    when(mockRoster.nameOf(1)).thenReturn("Number one");
+
+    for (int i = 0; i < 1000; i++) {
+      mockRoster.nameOf(i % 10);
+    }
+    mockRoster.nameOf("1");
+
+    verify(mockRoster, times(100)).nameOf(1);
+    verify(mockRoster, atLeast(100)).nameOf(2);
+    verify(mockRoster, atMost(100)).nameOf(3);
+    verify(mockRoster, never()).nameOf(10);
+    verify(mockRoster, times(1000)).nameOf(anyInt());
+    verify(mockRoster).nameOf(anyString());
+  }
+
+  @Test
+  public void testVerificationFailuresStillDescribeOtherInteractions() {
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+    mockRoster.nameOf(1);
+
+    try {
+      verify(mockRoster).nameOf(2);
+      fail();
+    } catch (final ArgumentsAreDifferent e) {
+      assertTrue(e.getMessage().contains("nameOf(1)"));
+    }
+    try {
+      verify(mockRoster, never()).nameOf(1);
+      fail();
+    } catch (final NeverWantedButInvoked e) {
+      // as expected
+    }
+  }
+
+  @Test
+  public void testInOrderAndNoMoreInteractionsStillSeeEverything() {
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+    mockRoster.nameOf(1);
+    mockRoster.nameOf("goalie");
+    mockRoster.nameOf(1);
+
+    final InOrder inOrder = inOrder(mockRoster);
+    inOrder.verify(mockRoster).nameOf(1);
+    inOrder.verify(mockRoster).nameOf("goalie");
+    inOrder.verify(mockRoster).nameOf(1);
+
+    verify(mockRoster, times(2)).nameOf(1);
+    verifyNoMoreInteractions(mockRoster);
+
+    mockRoster.nameOf("keeper");
+    try {
+      verifyNoMoreInteractions(mockRoster);
+      fail();
+    } catch (final NoInteractionsWanted e) {
+      // nameOf("keeper") wasn't verified
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testInstallingOnAUsedMockFails() {
+    @SuppressWarnings("unchecked")
+    final List<String> mockList = mock(List.class);
+    when(mockList.get(0)).thenReturn("Too late");
+
+    IndexedInvocationContainer.install(mockList);
+  }
+
+  @Test
+  public void testMatchersForAnotherMockAreKeptDuringVerification() throws Throwable {
+    final List<InvocationMatcher> potentialStubbings = new ArrayList<InvocationMatcher>();
+    @SuppressWarnings("serial")
+    final IndexedMockHandler<Roster> handler = new IndexedMockHandler<Roster>(
+        (MockSettingsImpl) withSettings(), new IndexedInvocationContainer() {
+          @Override
+          public synchronized void setInvocationForPotentialStubbing(
+              final InvocationMatcher invocation) {
+            potentialStubbings.add(invocation);
+            super.setInvocationForPotentialStubbing(invocation);
+          }
+        });
+    final Roster mockRoster = ProxyMocks.mock(Roster.class);
+
+    // a call on another mock, while verifying mockRoster
+    verify(mockRoster, never());
+    anyInt();
+    handler.handle(new Invocation(new Object(),
+        new DelegatingMethod(Roster.class.getMethod("nameOf", int.class)),
+        new Object[] { 0 }, 1, null));
+    mockRoster.nameOf("goalie");
+
+    assertEquals(1, potentialStubbings.size());
+    final List<?> matchers = potentialStubbings.get(0).getMatchers();
+    assertEquals(1, matchers.size());
+    assertSame(Any.ANY, ((LocalizedMatcher) matchers.get(0)).getActualMatcher());
+  }
+}
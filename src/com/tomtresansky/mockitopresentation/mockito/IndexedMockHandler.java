@@ -0,0 +1,220 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.hamcrest.Matcher;
+import org.mockito.exceptions.base.MockitoException;
+import org.mockito.internal.InOrderImpl;
+import org.mockito.internal.MockHandler;
+import org.mockito.internal.creation.MockSettingsImpl;
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.invocation.InvocationMatcher;
+import org.mockito.internal.invocation.MatchersBinder;
+import org.mockito.internal.matchers.LocalizedMatcher;
+import org.mockito.internal.progress.ArgumentMatcherStorage;
+import org.mockito.internal.progress.MockingProgress;
+import org.mockito.internal.progress.ThreadSafeMockingProgress;
+import org.mockito.internal.stubbing.InvocationContainer;
+import org.mockito.internal.stubbing.StubbedInvocationMatcher;
+import org.mockito.internal.verification.AtLeast;
+import org.mockito.internal.verification.AtMost;
+import org.mockito.internal.verification.InOrderWrapper;
+import org.mockito.internal.verification.MockAwareVerificationMode;
+import org.mockito.internal.verification.Times;
+import org.mockito.internal.verification.VerificationDataImpl;
+import org.mockito.verification.VerificationMode;
+
+/*
+ * Mockito's MockHandler, but counting verifications (times(), never(),
+ * atLeast() and atMost()) only get to see the invocations the
+ * IndexedInvocationContainer says might match, rather than every invocation
+ * of the mock. The checks themselves are still Mockito's.
+ *
+ * When nothing matches, the verification gets every invocation again (except
+ * for never() and atMost(), which pass anyway), so failure messages still
+ * list the other interactions with the mock.
+ *
+ * Any other verification - inOrder(), only(), timeout()... - sees every
+ * invocation, as usual.
+ *
+ * AwaitingVerification modes are run here too, as they need to wait on the
+ * container.
+ *
+ * Invocations reach here numbered from the InvocationSequence, so inOrder()
+ * verifications fail straight away if any of their mocks is numbered by
+ * Mockito instead - the order between the two can't be told.
+ */
+final class IndexedMockHandler<T> extends MockHandler<T> {
+  private static final long serialVersionUID = 1L;
+
+  private static final Field INVOCATION_CONTAINER =
+      IndexedInvocationContainer.field(MockHandler.class, "invocationContainerImpl");
+  private static final Field MODE =
+      IndexedInvocationContainer.field(MockAwareVerificationMode.class, "mode");
+  private static final Field TIMES_WANTED =
+      IndexedInvocationContainer.field(Times.class, "wantedCount");
+  private static final Field IN_ORDER =
+      IndexedInvocationContainer.field(InOrderWrapper.class, "inOrder");
+
+  private final IndexedInvocationContainer container;
+  private final MockingProgress mockingProgress = new ThreadSafeMockingProgress();
+  private final MatchersBinder matchersBinder = new MatchersBinder();
+
+  IndexedMockHandler(final MockSettingsImpl mockSettings,
+      final IndexedInvocationContainer container) {
+    super(mockSettings);
+    this.container = container;
+    try {
+      INVOCATION_CONTAINER.set(this, container);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public Object handle(final Invocation invocation) throws Throwable {
+    if (container.hasAnswersForStubbing()) {
+      return super.handle(invocation);
+    }
+
+    final VerificationMode verificationMode = mockingProgress.pullVerificationMode();
+    if (verificationMode == null) {
+      return super.handle(invocation);
+    }
+
+    if (((MockAwareVerificationMode) verificationMode).getMock() != invocation.getMock()) {
+      // A different mock, put the verification back for MockHandler
+      restartVerification(verificationMode);
+      return super.handle(invocation);
+    }
+
+    // Same as MockHandler does when verifying, but with fewer invocations to
+    // look through
+    final InvocationMatcher wanted = matchersBinder.bindMatchers(
+        mockingProgress.getArgumentMatcherStorage(), invocation);
+    mockingProgress.validateState();
+
+    final VerificationMode mode = modeOf(verificationMode);
+    if (mode instanceof InOrderWrapper) {
+      checkSameSequence((InOrderWrapper) mode);
+    }
+    if (mode instanceof AwaitingVerification) {
+      verifyAwaiting((AwaitingVerification) mode, wanted);
+    } else {
+      verificationMode.verify(new VerificationDataImpl(invocationsFor(mode, wanted), wanted));
+    }
+    return null;
+  }
+
+  /*
+   * Starting a verification checks no matchers are waiting to be used, so
+   * the caller's are taken out while it's put back, and then handed back for
+   * MockHandler to bind to the invocation.
+   */
+  private void restartVerification(final VerificationMode verificationMode) {
+    final ArgumentMatcherStorage matcherStorage = mockingProgress.getArgumentMatcherStorage();
+    final List<?> matchers = matcherStorage.pullMatchers();
+    mockingProgress.verificationStarted(verificationMode);
+    for (final Object matcher : matchers) {
+      matcherStorage.reportMatcher(matcher instanceof LocalizedMatcher
+          ? ((LocalizedMatcher) matcher).getActualMatcher()
+          : (Matcher<?>) matcher);
+    }
+  }
+
+  /*
+   * Re-runs the verification every time the mock is invoked, until it passes
+   * or the time is up. Being interrupted while waiting fails the verification
+   * (with the thread still interrupted) - verify() can't throw
+   * InterruptedException.
+   */
+  private void verifyAwaiting(final AwaitingVerification awaiting,
+      final InvocationMatcher wanted) {
+    final VerificationMode mode = awaiting.getMode();
+    final long deadline = System.nanoTime() + awaiting.getTimeoutNanos();
+    while (true) {
+      final long seen = container.getInvocationCount();
+      try {
+        mode.verify(new VerificationDataImpl(invocationsFor(mode, wanted), wanted));
+        return;
+      } catch (final AssertionError e) {
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || !awaitInvocation(seen, remaining, e)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private boolean awaitInvocation(final long seen, final long remaining,
+      final AssertionError failure) {
+    try {
+      return container.awaitInvocation(seen, remaining);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MockitoException("Interrupted while waiting for the verification to pass: "
+          + failure.getMessage(), e);
+    }
+  }
+
+  private static void checkSameSequence(final InOrderWrapper mode) {
+    final InOrderImpl inOrder;
+    try {
+      inOrder = (InOrderImpl) IN_ORDER.get(mode);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    for (final Object mock : inOrder.getMocksToBeVerifiedInOrder()) {
+      if (!IndexedInvocationContainer.isInstalled(mock)) {
+        throw new MockitoException("Can't verify in order across " + mock
+            + " and proxy or indexed mocks, their invocations are numbered from different"
+            + " sequences - install an IndexedInvocationContainer on it too");
+      }
+    }
+  }
+
+  private InvocationContainer invocationsFor(final VerificationMode mode,
+      final InvocationMatcher wanted) {
+    if (mode.getClass() != Times.class && mode.getClass() != AtLeast.class
+        && mode.getClass() != AtMost.class) {
+      return container;
+    }
+
+    final List<Invocation> candidates = container.candidatesFor(wanted);
+    if (candidates == null) {
+      return container;
+    }
+    if (candidates.isEmpty() && !(isNever(mode) || mode instanceof AtMost)) {
+      return container; // going to fail, let Mockito see everything for the message
+    }
+
+    return new InvocationContainer() {
+      @Override
+      public List<Invocation> getInvocations() {
+        return candidates;
+      }
+
+      @Override
+      public List<StubbedInvocationMatcher> getStubbedInvocations() {
+        return container.getStubbedInvocations();
+      }
+    };
+  }
+
+  private static VerificationMode modeOf(final VerificationMode verificationMode) {
+    try {
+      return (VerificationMode) MODE.get(verificationMode);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean isNever(final VerificationMode mode) {
+    try {
+      return mode instanceof Times && TIMES_WANTED.getInt(mode) == 0;
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
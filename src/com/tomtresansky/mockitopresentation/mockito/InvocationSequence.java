@@ -0,0 +1,30 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Sequence numbers for the invocations of proxy mocks, and of cglib mocks
+ * with an IndexedInvocationContainer installed.
+ *
+ * inOrder() sorts invocations across mocks by sequence number. Mockito hands
+ * those out from a synchronized method, so a multi-threaded system under test
+ * calling mocks makes all its threads queue on one lock. These come from an
+ * AtomicInteger instead - unique and increasing just the same, without the
+ * lock. Plain mock() mocks still number their invocations Mockito's way.
+ *
+ * Numbers from the two sequences can't be compared, so inOrder() across
+ * these mocks and plain Mockito mocks fails with a MockitoException (see
+ * IndexedMockHandler) - install an IndexedInvocationContainer on the plain
+ * ones too.
+ */
+public final class InvocationSequence {
+  private static final AtomicInteger NEXT = new AtomicInteger(1);
+
+  private InvocationSequence() {
+    // static methods only
+  }
+
+  public static int next() {
+    return NEXT.getAndIncrement();
+  }
+}
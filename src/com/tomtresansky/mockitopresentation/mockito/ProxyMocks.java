@@ -0,0 +1,233 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.mockito.MockSettings;
+import org.mockito.cglib.proxy.Callback;
+import org.mockito.cglib.proxy.Factory;
+import org.mockito.internal.InvocationNotifierHandler;
+import org.mockito.internal.MockHandler;
+import org.mockito.internal.creation.DelegatingMethod;
+import org.mockito.internal.creation.MethodInterceptorFilter;
+import org.mockito.internal.creation.MockSettingsImpl;
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.invocation.MockitoMethod;
+import org.mockito.internal.invocation.realmethod.RealMethod;
+import org.mockito.internal.progress.ThreadSafeMockingProgress;
+import org.mockito.internal.util.MockCreationValidator;
+
+/*
+ * Creates Mockito mocks of interfaces using JDK dynamic proxies
+ * (java.lang.reflect.Proxy) instead of cglib generated classes.
+ *
+ * Mockito 1.9.0 has no plugin point for how mocks are made, so this builds the
+ * same handler chain Mockito's own MockUtil does, and hands it to a proxy
+ * instead. The proxy also implements cglib's Factory interface, which is how
+ * Mockito recognizes its mocks - so when(), verify(), inOrder(), reset() and
+ * friends all work on these mocks exactly as on normal ones.
+ *
+ * Classes (Dracula, AbstractStreetFighter...) can't be proxied this way, so
+ * they - and serializable mocks or spies - fall back to Mockito.mock().
+ *
+ * Proxy classes aren't cached here: Proxy.newProxyInstance() already keeps
+ * one per classloader and set of interfaces. That cache doesn't say how often
+ * it hits, so there are no hit/miss counts. Stubbed answers are looked up
+ * through an IndexedInvocationContainer.
+ *
+ * Invocations are numbered from the InvocationSequence rather than Mockito's,
+ * so inOrder() across a proxy mock and a cglib mock needs the cglib mock to
+ * have an IndexedInvocationContainer installed - without, verifying the
+ * proxy mock in order throws a MockitoException.
+ */
+public final class ProxyMocks {
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  /*
+   * The Mockito view of every method called on a proxy mock.
+   */
+  private static final ConcurrentMap<Method, MockitoMethod> MOCKITO_METHODS =
+      new ConcurrentHashMap<Method, MockitoMethod>();
+
+  private ProxyMocks() {
+    // static methods only
+  }
+
+  public static <T> T mock(final Class<T> classToMock) {
+    return mock(classToMock, withSettings());
+  }
+
+  public static <T> T mock(final Class<T> classToMock, final MockSettings mockSettings) {
+    final MockSettingsImpl settings = (MockSettingsImpl) mockSettings;
+    final Class<?>[] interfaces = proxyInterfacesFor(classToMock, settings);
+    final ClassLoader classLoader = interfaces == null ? null : classLoaderFor(interfaces);
+    if (classLoader == null) {
+      return org.mockito.Mockito.mock(classToMock, mockSettings);
+    }
+
+    settings.initiateMockName(classToMock);
+    final T mock;
+    try {
+      mock = classToMock.cast(Proxy.newProxyInstance(classLoader, interfaces,
+          new ProxyMockHandler(newMethodInterceptorFilter(settings))));
+    } catch (final IllegalArgumentException e) {
+      // the interfaces can't be proxied together, e.g. clashing methods
+      return org.mockito.Mockito.mock(classToMock, mockSettings);
+    }
+
+    // Same as MockitoCore.mock() does after creating the mock
+    new ThreadSafeMockingProgress().mockingStarted(mock, classToMock, mockSettings);
+    return mock;
+  }
+
+  /*
+   * The interfaces the proxy for the type implements, or null when it can't
+   * be mocked with a proxy.
+   */
+  private static Class<?>[] proxyInterfacesFor(final Class<?> type,
+      final MockSettingsImpl settings) {
+    if (!type.isInterface() || settings.isSerializable()
+        || settings.getSpiedInstance() != null) {
+      return null;
+    }
+
+    final Class<?>[] extraInterfaces = settings.getExtraInterfaces() == null
+        ? new Class<?>[0]
+        : settings.getExtraInterfaces();
+    new MockCreationValidator().validateExtraInterfaces(type, extraInterfaces);
+
+    final Class<?>[] interfaces = new Class<?>[extraInterfaces.length + 2];
+    interfaces[0] = type;
+    System.arraycopy(extraInterfaces, 0, interfaces, 1, extraInterfaces.length);
+    interfaces[interfaces.length - 1] = Factory.class;
+    return interfaces;
+  }
+
+  /*
+   * The proxy class needs a classloader which can see all of the interfaces,
+   * including Mockito's (repackaged) cglib Factory interface.
+   */
+  private static ClassLoader classLoaderFor(final Class<?>[] interfaces) {
+    for (final Class<?> type : interfaces) {
+      final ClassLoader candidate = type.getClassLoader();
+      if (candidate != null && canSeeAll(candidate, interfaces)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private static boolean canSeeAll(final ClassLoader classLoader, final Class<?>[] types) {
+    for (final Class<?> type : types) {
+      if (!canSee(classLoader, type)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean canSee(final ClassLoader classLoader, final Class<?> type) {
+    try {
+      return Class.forName(type.getName(), false, classLoader) == type;
+    } catch (final ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /*
+   * Same handler chain as Mockito's MockUtil builds for cglib mocks, but with
+   * the indexed MockHandler.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static MethodInterceptorFilter newMethodInterceptorFilter(final MockSettingsImpl settings) {
+    final MockHandler mockHandler =
+        new IndexedMockHandler(settings, new IndexedInvocationContainer());
+    final InvocationNotifierHandler notifierHandler =
+        new InvocationNotifierHandler(mockHandler, settings);
+    return new MethodInterceptorFilter(notifierHandler, settings);
+  }
+
+  private static MockitoMethod mockitoMethodFor(final Method method) {
+    MockitoMethod mockitoMethod = MOCKITO_METHODS.get(method);
+    if (mockitoMethod == null) {
+      mockitoMethod = new DelegatingMethod(method);
+      MOCKITO_METHODS.putIfAbsent(method, mockitoMethod);
+    }
+    return mockitoMethod;
+  }
+
+  /*
+   * Interfaces have no real methods to call.
+   */
+  private static final RealMethod NO_REAL_METHOD = new RealMethod() {
+    @Override
+    public Object invoke(final Object target, final Object[] arguments) throws Throwable {
+      throw new UnsupportedOperationException("Can't call a real method of an interface");
+    }
+  };
+
+  /*
+   * Turns calls on the proxy into Mockito invocations, and answers the cglib
+   * Factory methods Mockito uses to find (and reset) a mock's handler.
+   */
+  private static final class ProxyMockHandler implements InvocationHandler {
+    private volatile MethodInterceptorFilter filter;
+
+    ProxyMockHandler(final MethodInterceptorFilter filter) {
+      this.filter = filter;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws Throwable {
+      if (method.getDeclaringClass() == Factory.class) {
+        return invokeFactoryMethod(method, args);
+      } else if ("equals".equals(method.getName())
+          && method.getParameterTypes().length == 1
+          && method.getParameterTypes()[0] == Object.class) {
+        return proxy == args[0];
+      } else if ("hashCode".equals(method.getName())
+          && method.getParameterTypes().length == 0) {
+        return System.identityHashCode(proxy);
+      }
+
+      final Invocation invocation = new Invocation(proxy, mockitoMethodFor(method),
+          args == null ? NO_ARGUMENTS : args, InvocationSequence.next(), NO_REAL_METHOD);
+      final Object result = filter.getHandler().handle(invocation);
+
+      /*
+       * Mockito returns null when verifying, even for primitives. cglib mocks
+       * turn that into 0/false, proxies would throw a NullPointerException.
+       */
+      final Class<?> returnType = method.getReturnType();
+      if (result == null && returnType.isPrimitive() && returnType != void.class) {
+        return Array.get(Array.newInstance(returnType, 1), 0);
+      }
+      return result;
+    }
+
+    private Object invokeFactoryMethod(final Method method, final Object[] args) {
+      final String name = method.getName();
+      if ("getCallback".equals(name)) {
+        return filter;
+      } else if ("getCallbacks".equals(name)) {
+        return new Callback[] { filter };
+      } else if ("setCallback".equals(name)) {
+        filter = (MethodInterceptorFilter) args[1];
+        IndexedInvocationContainer.installOn(filter); // reset() made a new handler
+        return null;
+      } else if ("setCallbacks".equals(name)) {
+        filter = (MethodInterceptorFilter) ((Callback[]) args[0])[0];
+        IndexedInvocationContainer.installOn(filter);
+        return null;
+      }
+      throw new UnsupportedOperationException(name + " isn't supported on proxy mocks");
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.Closeable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.exceptions.base.MockitoException;
+import org.mockito.exceptions.verification.NoInteractionsWanted;
+
+public class ProxyMocksTest {
+  /*
+   * Same shape as the warehouses in the verification examples.
+   */
+  interface Warehouse {
+    int stock(String item);
+    int ship(String item);
+    void clear();
+  }
+
+  @Test
+  public void testInterfacesAreMockedWithProxies() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+
+    assertTrue(Proxy.isProxyClass(mockWarehouse.getClass()));
+    assertTrue(mockingDetails(mockWarehouse));
+  }
+
+  @Test
+  public void testClassesFallBackToMockito() {
+    @SuppressWarnings("unchecked")
+    final List<String> mockList = ProxyMocks.mock(ArrayList.class);
+
+    assertFalse(Proxy.isProxyClass(mockList.getClass()));
+    assertTrue(mockingDetails(mockList));
+  }
+
+  @Test
+  public void testStubbing() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+
+    // Unstubbed methods get the usual defaults
+    assertEquals(0, mockWarehouse.stock("hat"));
+
+    when(mockWarehouse.stock("hat")).thenReturn(3);
+    when(mockWarehouse.ship(anyString())).thenThrow(new IllegalStateException());
+    doThrow(new UnsupportedOperationException()).when(mockWarehouse).clear();
+
+    assertEquals(3, mockWarehouse.stock("hat"));
+    try {
+      mockWarehouse.ship("hat");
+      fail();
+    } catch (final IllegalStateException e) {
+      // as stubbed
+    }
+    try {
+      mockWarehouse.clear();
+      fail();
+    } catch (final UnsupportedOperationException e) {
+      // as stubbed
+    }
+  }
+
+  @Test
+  public void testStubbingJdkInterface() {
+    @SuppressWarnings("unchecked")
+    final Map<Integer, String> mockNumbers = ProxyMocks.mock(Map.class);
+
+    when(mockNumbers.get(anyInt())).thenReturn("Here is a whole number.");
+    when(mockNumbers.get(eq(0))).thenReturn("This is 0!");
+
+    assertEquals("This is 0!", mockNumbers.get(0));
+    assertEquals("Here is a whole number.", mockNumbers.get(17));
+    assertTrue(Proxy.isProxyClass(mockNumbers.getClass()));
+  }
+
+  @Test
+  public void testVerification() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+    mockWarehouse.stock("hat");
+    mockWarehouse.stock("hat");
+    mockWarehouse.stock("hat");
+
+    verify(mockWarehouse, times(3)).stock("hat");
+    verify(mockWarehouse, never()).ship("hat");
+    verifyNoMoreInteractions(mockWarehouse);
+
+    mockWarehouse.clear();
+    try {
+      verifyNoMoreInteractions(mockWarehouse);
+      fail();
+    } catch (final NoInteractionsWanted e) {
+      // clear() wasn't verified
+    }
+  }
+
+  @Test
+  public void testInOrderAcrossProxyAndCglibMocks() {
+    final Warehouse proxyWarehouse = ProxyMocks.mock(Warehouse.class);
+    // numbered from the same sequence as the proxy mock
+    final Warehouse cglibWarehouse = IndexedInvocationContainer.install(mock(Warehouse.class));
+
+    proxyWarehouse.ship("bananas");
+    cglibWarehouse.stock("bananas");
+
+    final InOrder warehouseOrdering = inOrder(proxyWarehouse, cglibWarehouse);
+    warehouseOrdering.verify(proxyWarehouse).ship("bananas");
+    warehouseOrdering.verify(cglibWarehouse).stock("bananas");
+  }
+
+  @Test
+  public void testInOrderAcrossProxyAndPlainMocksFails() {
+    final Warehouse proxyWarehouse = ProxyMocks.mock(Warehouse.class);
+    final Warehouse plainWarehouse = mock(Warehouse.class);
+
+    plainWarehouse.ship("bananas");
+    proxyWarehouse.stock("bananas");
+
+    final InOrder warehouseOrdering = inOrder(plainWarehouse, proxyWarehouse);
+    warehouseOrdering.verify(plainWarehouse).ship("bananas");
+    try {
+      warehouseOrdering.verify(proxyWarehouse).stock("bananas");
+      fail();
+    } catch (final MockitoException e) {
+      // their sequence numbers can't be compared
+      assertTrue(e.getMessage(), e.getMessage().contains("different sequences"));
+    }
+  }
+
+  @Test
+  public void testReset() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+    when(mockWarehouse.stock("hat")).thenReturn(3);
+    mockWarehouse.stock("hat");
+
+    reset(mockWarehouse);
+
+    assertEquals(0, mockWarehouse.stock("hat"));
+    verify(mockWarehouse, times(1)).stock("hat");
+  }
+
+  @Test
+  public void testEqualsHashCodeAndToString() {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class);
+    final Warehouse otherWarehouse = ProxyMocks.mock(Warehouse.class);
+
+    assertEquals(mockWarehouse, mockWarehouse);
+    assertFalse(mockWarehouse.equals(otherWarehouse));
+    assertEquals(System.identityHashCode(mockWarehouse), mockWarehouse.hashCode());
+    assertTrue(mockWarehouse.toString().contains("Warehouse"));
+  }
+
+  @Test
+  public void testMocksOfTheSameTypeShareAProxyClass() {
+    assertSame(ProxyMocks.mock(Warehouse.class).getClass(),
+        ProxyMocks.mock(Warehouse.class).getClass());
+  }
+
+  @Test
+  public void testExtraInterfacesGetTheirOwnProxyClass() {
+    final Warehouse plainWarehouse = ProxyMocks.mock(Warehouse.class);
+    final Warehouse runnableWarehouse = ProxyMocks.mock(Warehouse.class,
+        withSettings().extraInterfaces(Runnable.class));
+    final Warehouse closeableWarehouse = ProxyMocks.mock(Warehouse.class,
+        withSettings().extraInterfaces(Closeable.class));
+
+    assertTrue(Proxy.isProxyClass(runnableWarehouse.getClass()));
+    assertNotSame(plainWarehouse.getClass(), runnableWarehouse.getClass());
+    assertNotSame(runnableWarehouse.getClass(), closeableWarehouse.getClass());
+  }
+
+  @Test
+  public void testExtraInterfacesCanBeStubbedAndVerified() throws Exception {
+    final Warehouse mockWarehouse = ProxyMocks.mock(Warehouse.class,
+        withSettings().extraInterfaces(Closeable.class));
+    final Closeable mockCloseable = (Closeable) mockWarehouse;
+
+    when(mockWarehouse.stock("hat")).thenReturn(7);
+    mockCloseable.close();
+
+    assertEquals(7, mockWarehouse.stock("hat"));
+    verify(mockCloseable).close();
+  }
+
+  private static boolean mockingDetails(final Object mock) {
+    return new org.mockito.internal.util.MockUtil().isMock(mock);
+  }
+}
@@ -0,0 +1,48 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import java.lang.reflect.Method;
+
+import org.mockito.cglib.proxy.MethodProxy;
+import org.mockito.internal.MockitoInvocationHandler;
+import org.mockito.internal.creation.MethodInterceptorFilter;
+import org.mockito.internal.creation.MockSettingsImpl;
+import org.mockito.internal.creation.MockitoMethodProxy;
+import org.mockito.internal.creation.cglib.CGLIBHacker;
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.invocation.realmethod.FilteredCGLIBProxyRealMethod;
+import org.mockito.internal.util.ObjectMethodsGuru;
+
+/*
+ * The cglib callback of a mock with an IndexedInvocationContainer installed.
+ * Does just what Mockito's MethodInterceptorFilter does, except that the
+ * invocation is numbered from the InvocationSequence - Mockito's own filter
+ * takes the next number from its synchronized SequenceNumber, so every call
+ * on the mock would still queue on that lock.
+ */
+final class SequencedMethodInterceptorFilter extends MethodInterceptorFilter {
+  private static final long serialVersionUID = 1L;
+
+  private final CGLIBHacker cglibHacker = new CGLIBHacker();
+  private final ObjectMethodsGuru objectMethodsGuru = new ObjectMethodsGuru();
+
+  SequencedMethodInterceptorFilter(final MockitoInvocationHandler handler,
+      final MockSettingsImpl mockSettings) {
+    super(handler, mockSettings);
+  }
+
+  @Override
+  public Object intercept(final Object proxy, final Method method, final Object[] args,
+      final MethodProxy methodProxy) throws Throwable {
+    if (objectMethodsGuru.isEqualsMethod(method)) {
+      return proxy == args[0];
+    } else if (objectMethodsGuru.isHashCodeMethod(method)) {
+      return System.identityHashCode(proxy);
+    }
+
+    final MockitoMethodProxy mockitoMethodProxy = createMockitoMethodProxy(methodProxy);
+    cglibHacker.setMockitoNamingPolicy(mockitoMethodProxy);
+    final Invocation invocation = new Invocation(proxy, createMockitoMethod(method), args,
+        InvocationSequence.next(), new FilteredCGLIBProxyRealMethod(mockitoMethodProxy));
+    return getHandler().handle(invocation);
+  }
+}
@@ -0,0 +1,200 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mockito.internal.invocation.Invocation;
+import org.mockito.internal.invocation.InvocationMatcher;
+import org.mockito.internal.stubbing.StubbedInvocationMatcher;
+import org.mockito.stubbing.Answer;
+
+/*
+ * An invocation container for a mock shared between many threads, e.g. in
+ * load tests.
+ *
+ * Mockito records every invocation in one synchronized list, so every thread
+ * calling the mock queues on the same lock. Here invocations are recorded in
+ * one of several stripes, picked by thread, each with its own lock - threads
+ * only wait for each other when they share a stripe. Looking up stubbed
+ * answers takes a read lock, so calls don't block each other there either;
+ * only adding a stubbing locks everyone out.
+ *
+ * Verification sees the stripes merged back into call order (by sequence
+ * number), so it works as usual, but isn't indexed like the plain
+ * IndexedInvocationContainer's.
+ */
+public class StripedInvocationContainer extends IndexedInvocationContainer {
+  private static final long serialVersionUID = 1L;
+
+  private static final Comparator<Invocation> BY_SEQUENCE_NUMBER = new Comparator<Invocation>() {
+    @Override
+    public int compare(final Invocation first, final Invocation second) {
+      final int firstNumber = first.getSequenceNumber();
+      final int secondNumber = second.getSequenceNumber();
+      return firstNumber < secondNumber ? -1 : (firstNumber == secondNumber ? 0 : 1);
+    }
+  };
+
+  private final Stripe[] stripes;
+  private final ReadWriteLock stubbingLock = new ReentrantReadWriteLock();
+
+  /*
+   * The invocation each thread made last, in case it turns out to be stubbing.
+   */
+  private final ThreadLocal<Invocation> lastInvocation = new ThreadLocal<Invocation>();
+
+  private final AtomicLong invocationCount = new AtomicLong();
+  private final AtomicInteger waiters = new AtomicInteger();
+
+  public StripedInvocationContainer() {
+    // A power of two comfortably above the number of cores
+    int stripeCount = 1;
+    while (stripeCount < 2 * Runtime.getRuntime().availableProcessors()) {
+      stripeCount <<= 1;
+    }
+    stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /*
+   * Makes the (freshly created) mock record its invocations in stripes. Has
+   * to happen again after it is reset().
+   */
+  public static <T> T stripe(final T mock) {
+    return install(mock, new StripedInvocationContainer());
+  }
+
+  @Override
+  public void setInvocationForPotentialStubbing(final InvocationMatcher invocation) {
+    final Invocation added = invocation.getInvocation();
+    final Stripe stripe = stripeForCurrentThread();
+    synchronized (stripe) {
+      stripe.invocations.add(added);
+    }
+    lastInvocation.set(added);
+    resetInvocationForPotentialStubbing(invocation);
+
+    invocationCount.incrementAndGet();
+    if (waiters.get() > 0) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public void addAnswer(final Answer answer) {
+    // The thread's last invocation was the one being stubbed
+    final Invocation stubbed = lastInvocation.get();
+    final Stripe stripe = stripeForCurrentThread();
+    synchronized (stripe) {
+      // By identity, Invocation.equals() isn't reliable
+      for (int i = stripe.invocations.size() - 1; i >= 0; i--) {
+        if (stripe.invocations.get(i) == stubbed) {
+          stripe.invocations.remove(i);
+          break;
+        }
+      }
+    }
+    lastInvocation.remove();
+
+    addAnswer(answer, false);
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public void addAnswer(final Answer answer, final boolean isConsecutive) {
+    stubbingLock.writeLock().lock();
+    try {
+      super.addAnswer(answer, isConsecutive);
+    } finally {
+      stubbingLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public StubbedInvocationMatcher findAnswerFor(final Invocation invocation) {
+    stubbingLock.readLock().lock();
+    try {
+      return findIndexedAnswerFor(invocation);
+    } finally {
+      stubbingLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean hasInvocationForPotentialStubbing() {
+    for (final Stripe stripe : stripes) {
+      synchronized (stripe) {
+        if (!stripe.invocations.isEmpty()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public List<Invocation> getInvocations() {
+    final List<Invocation> invocations = new ArrayList<Invocation>();
+    for (final Stripe stripe : stripes) {
+      synchronized (stripe) {
+        for (final Invocation invocation : stripe.invocations) {
+          if (!invocation.isToString()) {
+            invocations.add(invocation);
+          }
+        }
+      }
+    }
+    Collections.sort(invocations, BY_SEQUENCE_NUMBER);
+    return invocations;
+  }
+
+  @Override
+  List<Invocation> candidatesFor(final InvocationMatcher wanted) {
+    return null; // not indexed, see getInvocations()
+  }
+
+  @Override
+  long getInvocationCount() {
+    return invocationCount.get();
+  }
+
+  @Override
+  boolean awaitInvocation(final long seen, final long timeoutNanos) throws InterruptedException {
+    final long deadline = System.nanoTime() + timeoutNanos;
+    waiters.incrementAndGet();
+    try {
+      synchronized (this) {
+        while (invocationCount.get() == seen) {
+          final long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            return false;
+          }
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+      }
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  private Stripe stripeForCurrentThread() {
+    return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+  }
+
+  private static final class Stripe {
+    final List<Invocation> invocations = new ArrayList<Invocation>();
+  }
+}
@@ -0,0 +1,117 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static com.tomtresansky.mockitopresentation.mockito.AwaitingVerification.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.exceptions.verification.NoInteractionsWanted;
+import org.mockito.internal.util.MockUtil;
+
+public class StripedInvocationContainerTest {
+  private static final int THREADS = 8;
+  private static final int CALLS_PER_THREAD = 500;
+
+  /*
+   * Same shape as the engine in the mock injection examples.
+   */
+  interface Engine {
+    void start();
+    boolean isRunning();
+    int getRPMs();
+  }
+
+  private static void fromManyThreads(final Runnable calls) throws InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    for (int thread = 0; thread < THREADS; thread++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          calls.run();
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSharedMockRecordsEveryCall() throws Exception {
+    final Engine mockEngine = StripedInvocationContainer.stripe(mock(Engine.class));
+    assertTrue(new MockUtil().getMockHandler(mockEngine).getInvocationContainer()
+        instanceof StripedInvocationContainer);
+
+    when(mockEngine.isRunning()).thenReturn(true);
+    when(mockEngine.getRPMs()).thenReturn(2000);
+
+    fromManyThreads(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < CALLS_PER_THREAD; i++) {
+          assertTrue(mockEngine.isRunning());
+          assertEquals(2000, mockEngine.getRPMs());
+        }
+      }
+    });
+
+    verify(mockEngine, times(THREADS * CALLS_PER_THREAD)).isRunning();
+    verify(mockEngine, times(THREADS * CALLS_PER_THREAD)).getRPMs();
+    verifyNoMoreInteractions(mockEngine);
+  }
+
+  @Test
+  public void testInvocationsComeBackInCallOrder() throws Exception {
+    final Engine mockEngine = StripedInvocationContainer.stripe(mock(Engine.class));
+
+    fromManyThreads(new Runnable() {
+      @Override
+      public void run() {
+        mockEngine.getRPMs();
+      }
+    });
+    mockEngine.start();
+    mockEngine.isRunning();
+
+    final InOrder engineOrdering = inOrder(mockEngine);
+    engineOrdering.verify(mockEngine, times(THREADS)).getRPMs();
+    engineOrdering.verify(mockEngine).start();
+    engineOrdering.verify(mockEngine).isRunning();
+  }
+
+  @Test
+  public void testWaitingForCalls() {
+    final Engine mockEngine = StripedInvocationContainer.stripe(mock(Engine.class));
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        mockEngine.start();
+      }
+    }).start();
+
+    verify(mockEngine, within(10000)).start();
+  }
+
+  @Test(expected = NoInteractionsWanted.class)
+  public void testUnverifiedCallsAreNoticed() {
+    final Engine mockEngine = StripedInvocationContainer.stripe(mock(Engine.class));
+    mockEngine.start();
+    mockEngine.getRPMs();
+
+    verify(mockEngine).start();
+    verifyNoMoreInteractions(mockEngine);
+  }
+}
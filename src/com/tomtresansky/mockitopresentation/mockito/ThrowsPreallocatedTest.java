@@ -0,0 +1,58 @@
+package com.tomtresansky.mockitopresentation.mockito;
+
+import static com.tomtresansky.mockitopresentation.mockito.ThrowsPreallocated.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.mockito.exceptions.base.MockitoException;
+
+public class ThrowsPreallocatedTest {
+  /*
+   * Same shape as the rockets in the stubbing corner cases.
+   */
+  interface Rocket {
+    boolean readyToLaunch();
+    void launch();
+  }
+
+  @Test
+  public void testRethrowsTheSameStacklessException() {
+    final IllegalStateException unfueled = new IllegalStateException("unfueled");
+    final Rocket mockRocket = mock(Rocket.class);
+    when(mockRocket.readyToLaunch()).thenAnswer(throwsPreallocated(unfueled));
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        mockRocket.readyToLaunch();
+        fail();
+      } catch (final IllegalStateException e) {
+        assertSame(unfueled, e);
+        assertEquals(0, e.getStackTrace().length);
+      }
+    }
+  }
+
+  @Test
+  public void testVoidMethod() {
+    final IllegalStateException exploded = new IllegalStateException("boom");
+    final Rocket mockRocket = mock(Rocket.class);
+    doAnswer(throwsPreallocated(exploded)).when(mockRocket).launch();
+
+    try {
+      mockRocket.launch();
+      fail();
+    } catch (final IllegalStateException e) {
+      assertSame(exploded, e);
+    }
+    verify(mockRocket).launch();
+  }
+
+  @Test(expected = MockitoException.class)
+  public void testUndeclaredCheckedExceptionIsRefused() {
+    final Rocket mockRocket = mock(Rocket.class);
+    when(mockRocket.readyToLaunch()).thenAnswer(throwsPreallocated(new IOException()));
+  }
+}
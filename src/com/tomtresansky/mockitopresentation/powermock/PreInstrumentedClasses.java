@@ -0,0 +1,240 @@
+package com.tomtresansky.mockitopresentation.powermock;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.powermock.core.classloader.DeferSupportingClassLoader;
+import org.powermock.core.classloader.MockClassLoader;
+
+/*
+ * Defines the class files PreparedClassesInstrumenter wrote at build time
+ * straight into a MockClassLoader - so javassist never parses, rewrites or
+ * writes out those classes at test time.
+ *
+ * MockClassLoader is final and loads its modified classes privately, so the
+ * bytecode is defined through ClassLoader.defineClass() and registered in the
+ * loader's map of loaded classes, where it looks first.
+ *
+ * Classes without an instrumented file, or whose original class file is newer
+ * than the instrumented one, are left for the MockClassLoader to rewrite as
+ * usual.
+ */
+final class PreInstrumentedClasses {
+  /*
+   * Classes instrumented with their static initializer suppressed live in
+   * their own sub-directory, as the bytecode differs.
+   */
+  static final String STATIC_SUPPRESSED_DIRECTORY = "static-suppressed";
+
+  private static final Method DEFINE_CLASS;
+  private static final Field LOADED_CLASSES;
+
+  static {
+    try {
+      DEFINE_CLASS = ClassLoader.class.getDeclaredMethod(
+          "defineClass", String.class, byte[].class, int.class, int.class);
+      DEFINE_CLASS.setAccessible(true);
+      LOADED_CLASSES = DeferSupportingClassLoader.class.getDeclaredField("classes");
+      LOADED_CLASSES.setAccessible(true);
+    } catch (final Exception e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private PreInstrumentedClasses() {
+    // static helpers only
+  }
+
+  /*
+   * Where the instrumented version of a class is kept.
+   */
+  static File classFile(final File directory, final String className,
+      final boolean staticInitializerSuppressed) {
+    final File root = staticInitializerSuppressed
+        ? new File(directory, STATIC_SUPPRESSED_DIRECTORY)
+        : directory;
+    return new File(root, className.replace('.', File.separatorChar) + ".class");
+  }
+
+  /*
+   * Defines the instrumented versions of the named classes which the loader
+   * hasn't loaded yet, returning the names of those defined. The suppressed
+   * classes are the ones the test class suppresses the static initializers
+   * of. Originals are looked up through the given classloader, to tell
+   * whether the instrumented files are up to date.
+   */
+  static Set<String> defineIn(final MockClassLoader classLoader, final File directory,
+      final Collection<String> classNames, final Set<String> suppressed,
+      final ClassLoader originals) throws IOException {
+    synchronized (classLoader) {
+      final Map<String, Class<?>> loaded = loadedClasses(classLoader);
+
+      final Map<String, byte[]> pending = new HashMap<String, byte[]>();
+      for (final String className : classNames) {
+        if (className.endsWith("*") || loaded.containsKey(className)) {
+          continue;
+        }
+        final File instrumented =
+            classFile(directory, className, suppressed.contains(className));
+        if (isUpToDate(instrumented, className, originals)) {
+          pending.put(className, read(instrumented));
+        }
+      }
+
+      final Set<String> defined = new LinkedHashSet<String>();
+      for (final String className : new ArrayList<String>(pending.keySet())) {
+        define(classLoader, loaded, className, pending, defined, new HashSet<String>());
+      }
+      return defined;
+    }
+  }
+
+  /*
+   * Defining a class loads its supertypes, so any of those still pending are
+   * defined first - otherwise the MockClassLoader would rewrite them itself.
+   */
+  private static void define(final MockClassLoader classLoader,
+      final Map<String, Class<?>> loaded, final String className,
+      final Map<String, byte[]> pending, final Set<String> defined, final Set<String> visiting)
+      throws IOException {
+    final byte[] bytecode = pending.get(className);
+    if (bytecode == null || !visiting.add(className)) {
+      return;
+    }
+    for (final String superType : superTypes(bytecode)) {
+      define(classLoader, loaded, superType, pending, defined, visiting);
+    }
+
+    try {
+      loaded.put(className, (Class<?>) DEFINE_CLASS.invoke(
+          classLoader, className, bytecode, 0, bytecode.length));
+    } catch (final Exception e) {
+      throw new IllegalStateException("Couldn't define pre-instrumented " + className, e);
+    }
+    pending.remove(className);
+    defined.add(className);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Class<?>> loadedClasses(final MockClassLoader classLoader) {
+    try {
+      return (Map<String, Class<?>>) LOADED_CLASSES.get(classLoader);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException("Couldn't get the loaded classes of " + classLoader, e);
+    }
+  }
+
+  /*
+   * The instrumented file has to exist, and be newer than the class it was
+   * made from (when we can tell).
+   */
+  private static boolean isUpToDate(final File instrumented, final String className,
+      final ClassLoader originals) {
+    if (!instrumented.isFile()) {
+      return false;
+    }
+
+    try {
+      final URL original = originals.getResource(className.replace('.', '/') + ".class");
+      if (original != null && "file".equals(original.getProtocol())) {
+        return new File(original.toURI()).lastModified() <= instrumented.lastModified();
+      }
+    } catch (final Exception e) {
+      // can't tell, trust the instrumented file
+    }
+    return true;
+  }
+
+  private static byte[] read(final File file) throws IOException {
+    final byte[] bytes = new byte[(int) file.length()];
+    final InputStream in = new FileInputStream(file);
+    try {
+      new DataInputStream(in).readFully(bytes);
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+
+  /*
+   * The superclass and interfaces named in a class file. Just enough of the
+   * format is read to get past the constant pool.
+   */
+  static List<String> superTypes(final byte[] bytecode) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytecode));
+    if (in.readInt() != 0xCAFEBABE) {
+      throw new IOException("Not a class file");
+    }
+    in.readUnsignedShort(); // minor version
+    in.readUnsignedShort(); // major version
+
+    final int constants = in.readUnsignedShort();
+    final String[] utf8 = new String[constants];
+    final int[] classNameIndex = new int[constants];
+    for (int i = 1; i < constants; i++) {
+      final int tag = in.readUnsignedByte();
+      switch (tag) {
+        case 1: // Utf8
+          utf8[i] = in.readUTF();
+          break;
+        case 7: // Class
+          classNameIndex[i] = in.readUnsignedShort();
+          break;
+        case 8: // String
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          in.skipBytes(2);
+          break;
+        case 15: // MethodHandle
+          in.skipBytes(3);
+          break;
+        case 3: // Integer
+        case 4: // Float
+        case 9: // Fieldref
+        case 10: // Methodref
+        case 11: // InterfaceMethodref
+        case 12: // NameAndType
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          in.skipBytes(4);
+          break;
+        case 5: // Long
+        case 6: // Double
+          in.skipBytes(8);
+          i++; // takes two entries
+          break;
+        default:
+          throw new IOException("Unknown constant pool tag " + tag);
+      }
+    }
+
+    in.readUnsignedShort(); // access flags
+    in.readUnsignedShort(); // this class
+    final List<String> superTypes = new ArrayList<String>();
+    final int superClass = in.readUnsignedShort();
+    if (superClass != 0) {
+      superTypes.add(utf8[classNameIndex[superClass]].replace('/', '.'));
+    }
+    final int interfaces = in.readUnsignedShort();
+    for (int i = 0; i < interfaces; i++) {
+      superTypes.add(utf8[classNameIndex[in.readUnsignedShort()]].replace('/', '.'));
+    }
+    return superTypes;
+  }
+}
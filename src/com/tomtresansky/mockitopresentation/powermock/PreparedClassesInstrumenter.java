@@ -0,0 +1,143 @@
+package com.tomtresansky.mockitopresentation.powermock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+
+import org.powermock.core.MockRepository;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.core.transformers.impl.MainMockTransformer;
+import org.powermock.tests.utils.impl.PrepareForTestExtractorImpl;
+
+/*
+ * Build step which does PowerMock's bytecode rewriting ahead of time.
+ *
+ * For each test class given, every class named in @PrepareForTest and
+ * @SuppressStaticInitializationFor (and the test class itself, which PowerMock
+ * always prepares) is run through PowerMock's MainMockTransformer and written
+ * out to the output directory. Run it after compiling:
+ *
+ * java ...PreparedClassesInstrumenter <output dir> <test class>...
+ *
+ * and run the tests with SharedClassLoaderPowerMockRunner and
+ * -Dpowermock.preInstrumentedClasses=<output dir> to load these class files
+ * instead of rewriting the classes on every JVM start.
+ *
+ * Wildcard names (e.g. "com.example.*") can't be expanded here, those classes
+ * are still rewritten at test time.
+ */
+public final class PreparedClassesInstrumenter {
+  private PreparedClassesInstrumenter() {
+    // only run from main
+  }
+
+  public static void main(final String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println(
+          "Usage: PreparedClassesInstrumenter <output dir> <test class>...");
+      System.exit(1);
+    }
+
+    final File outputDirectory = new File(args[0]);
+    for (int i = 1; i < args.length; i++) {
+      for (final String className : instrument(outputDirectory, Class.forName(args[i]))) {
+        System.out.println("Instrumented " + className);
+      }
+    }
+  }
+
+  /*
+   * Instruments the classes prepared by a test class, returning their names.
+   */
+  static Set<String> instrument(final File outputDirectory, final Class<?> testClass)
+      throws Exception {
+    final Set<String> suppressed = suppressedStaticInitializers(testClass);
+    final Set<String> classNames = new TreeSet<String>(suppressed);
+    for (final String className : new PrepareForTestExtractorImpl().getTestClasses(testClass)) {
+      classNames.add(className);
+    }
+
+    final Set<String> instrumented = new TreeSet<String>();
+    for (final String className : classNames) {
+      if (className.endsWith("*")) {
+        continue;
+      }
+
+      final boolean suppressStaticInitializer = suppressed.contains(className);
+      write(PreInstrumentedClasses.classFile(outputDirectory, className, suppressStaticInitializer),
+          transform(className, suppressStaticInitializer, testClass.getClassLoader()));
+      instrumented.add(className);
+    }
+    return instrumented;
+  }
+
+  /*
+   * Same as PowerMock's StaticConstructorSuppressExtractorImpl, without it
+   * registering the classes with the MockRepository.
+   */
+  private static Set<String> suppressedStaticInitializers(final Class<?> testClass) {
+    final Set<String> classNames = new TreeSet<String>();
+    final SuppressStaticInitializationFor annotation =
+        testClass.getAnnotation(SuppressStaticInitializationFor.class);
+    if (annotation != null) {
+      for (final String className : annotation.value()) {
+        if (!"".equals(className)) {
+          classNames.add(className);
+        }
+      }
+    }
+    return classNames;
+  }
+
+  /*
+   * The transformer looks up whether to suppress the static initializer in
+   * the MockRepository, so that's set up for just this class while it runs.
+   */
+  private static byte[] transform(final String className,
+      final boolean suppressStaticInitializer, final ClassLoader classLoader) throws Exception {
+    final boolean register = suppressStaticInitializer
+        && !MockRepository.shouldSuppressStaticInitializerFor(className);
+    final boolean unregister = !suppressStaticInitializer
+        && MockRepository.shouldSuppressStaticInitializerFor(className);
+    if (register) {
+      MockRepository.addSuppressStaticInitializer(className);
+    }
+    if (unregister) {
+      MockRepository.removeSuppressStaticInitializer(className);
+    }
+
+    try {
+      // A fresh pool each time, the transformer modifies what's in the pool
+      final ClassPool classPool = new ClassPool(true);
+      classPool.appendClassPath(new LoaderClassPath(classLoader));
+      final CtClass transformed = new MainMockTransformer().transform(classPool.get(className));
+      return transformed.toBytecode();
+    } finally {
+      if (register) {
+        MockRepository.removeSuppressStaticInitializer(className);
+      }
+      if (unregister) {
+        MockRepository.addSuppressStaticInitializer(className);
+      }
+    }
+  }
+
+  private static void write(final File classFile, final byte[] bytecode) throws Exception {
+    if (!classFile.getParentFile().isDirectory() && !classFile.getParentFile().mkdirs()) {
+      throw new IllegalStateException("Couldn't create " + classFile.getParent());
+    }
+
+    final OutputStream out = new FileOutputStream(classFile);
+    try {
+      out.write(bytecode);
+    } finally {
+      out.close();
+    }
+  }
+}
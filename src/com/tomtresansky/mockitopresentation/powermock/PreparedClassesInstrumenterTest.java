@@ -0,0 +1,174 @@
+package com.tomtresansky.mockitopresentation.powermock;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Set;
+
+import javassist.CtClass;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.RunNotifier;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.MockRepository;
+import org.powermock.core.classloader.MockClassLoader;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.core.transformers.MockTransformer;
+
+public class PreparedClassesInstrumenterTest {
+  /*
+   * A test class to instrument ahead of time.
+   */
+  @RunWith(SharedClassLoaderPowerMockRunner.class)
+  @PrepareForTest({ Ledger.class, Auditor.class })
+  @SuppressStaticInitializationFor("com.tomtresansky.mockitopresentation.powermock.Ledger")
+  public static class InstrumentedLedgerTest {
+    @Test
+    public void testLedger() {
+      assertNull(Ledger.lastEntry);
+
+      final Auditor mockAuditor = PowerMockito.mock(Auditor.class);
+      when(mockAuditor.approve(any(Ledger.class))).thenReturn(false);
+      assertFalse(mockAuditor.approve(null));
+    }
+  }
+
+  /*
+   * Fails the test if the pre-instrumented class files aren't used.
+   */
+  private static final MockTransformer NO_FALLBACK = new MockTransformer() {
+    @Override
+    public CtClass transform(final CtClass clazz) throws Exception {
+      fail("Should have used the pre-instrumented " + clazz.getName());
+      return clazz;
+    }
+  };
+
+  private File outputDirectory;
+
+  @Before
+  public void setup() throws Exception {
+    outputDirectory = File.createTempFile("instrumented", "");
+    assertTrue(outputDirectory.delete());
+    assertTrue(outputDirectory.mkdir());
+  }
+
+  @After
+  public void teardown() {
+    System.clearProperty(SharedClassLoaderPowerMockRunner.PRE_INSTRUMENTED_CLASSES_PROPERTY);
+    delete(outputDirectory);
+  }
+
+  @Test
+  public void testInstrumentsPreparedClasses() throws Exception {
+    final Set<String> instrumented =
+        PreparedClassesInstrumenter.instrument(outputDirectory, InstrumentedLedgerTest.class);
+
+    assertTrue(instrumented.contains(Ledger.class.getName()));
+    assertTrue(instrumented.contains(Auditor.class.getName()));
+    assertTrue(instrumented.contains(InstrumentedLedgerTest.class.getName()));
+
+    // Ledger's static initializer is suppressed, Auditor's isn't
+    assertTrue(PreInstrumentedClasses.classFile(
+        outputDirectory, Ledger.class.getName(), true).isFile());
+    assertTrue(PreInstrumentedClasses.classFile(
+        outputDirectory, Auditor.class.getName(), false).isFile());
+  }
+
+  @Test
+  public void testInstrumentingLeavesTheMockRepositoryAlone() throws Exception {
+    // other tests' runners may have left Ledger suppressed (PowerMock never
+    // clears that), so start from a known state and put it back afterwards
+    final String ledger = Ledger.class.getName();
+    final boolean suppressed = MockRepository.shouldSuppressStaticInitializerFor(ledger);
+    MockRepository.removeSuppressStaticInitializer(ledger);
+    try {
+      PreparedClassesInstrumenter.instrument(outputDirectory, InstrumentedLedgerTest.class);
+
+      assertFalse(MockRepository.shouldSuppressStaticInitializerFor(ledger));
+    } finally {
+      if (suppressed) {
+        MockRepository.addSuppressStaticInitializer(ledger);
+      }
+    }
+  }
+
+  @Test
+  public void testDefinesInstrumentedClasses() throws Exception {
+    PreparedClassesInstrumenter.instrument(outputDirectory, InstrumentedLedgerTest.class);
+    assertTrue(Modifier.isFinal(Auditor.class.getModifiers()));
+
+    final MockClassLoader classLoader = new MockClassLoader(new String[0]);
+    classLoader.setMockTransformerChain(Collections.singletonList(NO_FALLBACK));
+    classLoader.addClassesToModify(Auditor.class.getName());
+
+    final Set<String> defined = PreInstrumentedClasses.defineIn(classLoader, outputDirectory,
+        Collections.singleton(Auditor.class.getName()), Collections.<String>emptySet(),
+        getClass().getClassLoader());
+    assertEquals(Collections.singleton(Auditor.class.getName()), defined);
+
+    // PowerMock removes final, so it can be mocked
+    final Class<?> auditor = classLoader.loadClass(Auditor.class.getName());
+    assertFalse(Modifier.isFinal(auditor.getModifiers()));
+    assertSame(classLoader, auditor.getClassLoader());
+
+    // already there, so not defined again
+    assertEquals(Collections.emptySet(), PreInstrumentedClasses.defineIn(classLoader,
+        outputDirectory, Collections.singleton(Auditor.class.getName()),
+        Collections.<String>emptySet(), getClass().getClassLoader()));
+  }
+
+  @Test
+  public void testOutOfDateClassesAreNotDefined() throws Exception {
+    PreparedClassesInstrumenter.instrument(outputDirectory, InstrumentedLedgerTest.class);
+    assertTrue(PreInstrumentedClasses.classFile(outputDirectory, Auditor.class.getName(), false)
+        .setLastModified(0));
+
+    final Set<String> defined = PreInstrumentedClasses.defineIn(new MockClassLoader(new String[0]),
+        outputDirectory, Collections.singleton(Auditor.class.getName()),
+        Collections.<String>emptySet(), getClass().getClassLoader());
+
+    assertEquals(Collections.emptySet(), defined);
+  }
+
+  @Test
+  public void testRunnerLoadsInstrumentedClasses() throws Exception {
+    PreparedClassesInstrumenter.instrument(outputDirectory, InstrumentedLedgerTest.class);
+    System.setProperty(SharedClassLoaderPowerMockRunner.PRE_INSTRUMENTED_CLASSES_PROPERTY,
+        outputDirectory.getPath());
+
+    final Result result = new Result();
+    final RunNotifier notifier = new RunNotifier();
+    notifier.addListener(result.createListener());
+
+    final SharedClassLoaderPowerMockRunner runner =
+        new SharedClassLoaderPowerMockRunner(InstrumentedLedgerTest.class);
+    // anything PowerMock would still rewrite now fails the test
+    for (final ClassLoader classLoader : runner.getClassLoaders()) {
+      ((MockClassLoader) classLoader).setMockTransformerChain(
+          Collections.singletonList(NO_FALLBACK));
+    }
+    runner.run(notifier);
+
+    assertEquals(result.getFailures().toString(), 0, result.getFailureCount());
+    assertEquals(1, result.getRunCount());
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,319 @@
+package com.tomtresansky.mockitopresentation.powermock;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.Filterable;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sortable;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runner.notification.RunNotifier;
+import org.powermock.core.MockRepository;
+import org.powermock.core.classloader.MockClassLoader;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.common.internal.impl.JUnit4TestSuiteChunkerImpl;
+import org.powermock.modules.junit4.internal.impl.PowerMockJUnit47RunnerDelegateImpl;
+import org.powermock.tests.utils.TestChunk;
+
+/*
+ * A drop in replacement for PowerMockRunner which re-uses PowerMock's mock
+ * classloader across test classes.
+ *
+ * The plain PowerMockRunner builds a new MockClassLoader for every test class,
+ * so every class named in @PrepareForTest (and everything else the test
+ * touches) is loaded and run through javassist again. This runner keys the
+ * classloaders by the set of classes to prepare (plus the packages to ignore),
+ * so test classes with identical @PrepareForTest and
+ * @SuppressStaticInitializationFor sets in the same JVM share one classloader,
+ * and only pay for the bytecode rewriting once.
+ *
+ * Between test classes the PowerMock MockRepository is cleared, and the static
+ * fields of classes whose static initializer is suppressed are put back to
+ * their default values (which is exactly the state a freshly loaded copy would
+ * have). Static state of other prepared classes is NOT reset - their static
+ * initializers only run once per shared classloader, so only share between
+ * test classes which don't rely on modifying such state.
+ *
+ * Test classes using @MockPolicy, or with @SuppressStaticInitializationFor
+ * on a test method, get their own classloader, as with the plain runner.
+ *
+ * When the powermock.preInstrumentedClasses system property names a directory
+ * written by PreparedClassesInstrumenter, prepared classes are defined from
+ * there rather than being rewritten with javassist at test time.
+ */
+public class SharedClassLoaderPowerMockRunner extends Runner implements Filterable, Sortable {
+  static final String PRE_INSTRUMENTED_CLASSES_PROPERTY = "powermock.preInstrumentedClasses";
+
+  private static final ConcurrentMap<String, ClassLoader> CLASS_LOADERS =
+      new ConcurrentHashMap<String, ClassLoader>();
+
+  private final SharingTestSuiteChunker suiteChunker;
+
+  public SharedClassLoaderPowerMockRunner(final Class<?> klass) throws Exception {
+    suiteChunker = new SharingTestSuiteChunker(klass);
+
+    // Same as the plain runner: start from a clean repository
+    MockRepository.clear();
+  }
+
+  @Override
+  public Description getDescription() {
+    return suiteChunker.getDescription();
+  }
+
+  /*
+   * MockClassLoader leaves org.powermock.core to its parent, so there's just
+   * the one MockRepository, whichever classloader the tests run in.
+   */
+  @Override
+  public void run(final RunNotifier notifier) {
+    MockRepository.clear();
+    suiteChunker.forgetOtherSuppressions();
+    try {
+      suiteChunker.run(notifier);
+    } finally {
+      MockRepository.clear();
+      for (final ClassLoader classLoader : getClassLoaders()) {
+        suiteChunker.resetSuppressedStaticState(classLoader);
+      }
+    }
+  }
+
+  @Override
+  public synchronized int testCount() {
+    return suiteChunker.getTestCount();
+  }
+
+  @Override
+  public void filter(final Filter filter) throws NoTestsRemainException {
+    suiteChunker.filter(filter);
+  }
+
+  @Override
+  public void sort(final Sorter sorter) {
+    suiteChunker.sort(sorter);
+  }
+
+  /*
+   * The classloaders this runner's tests will be run by.
+   */
+  Set<ClassLoader> getClassLoaders() {
+    final Set<ClassLoader> classLoaders = new LinkedHashSet<ClassLoader>();
+    for (final TestChunk chunk : suiteChunker.getTestChunks()) {
+      classLoaders.add(chunk.getClassLoader());
+    }
+    return classLoaders;
+  }
+
+  /*
+   * Number of distinct classloaders currently shared between test classes.
+   */
+  static int getSharedClassLoaderCount() {
+    return CLASS_LOADERS.size();
+  }
+
+  /*
+   * Hands out a cached classloader when one has already been created for the
+   * same set of classes.
+   */
+  private static final class SharingTestSuiteChunker extends JUnit4TestSuiteChunkerImpl {
+    SharingTestSuiteChunker(final Class<?> testClass) throws Exception {
+      super(testClass, PowerMockJUnit47RunnerDelegateImpl.class);
+    }
+
+    /*
+     * Note: this is called from the super class constructor.
+     */
+    @Override
+    public ClassLoader createNewClassloader(final Class<?> testClass,
+        final String[] classesToLoadByMockClassloader, final String[] packagesToIgnore) {
+      if (classesToLoadByMockClassloader == null
+          || classesToLoadByMockClassloader.length == 0
+          || hasMockPolicyProvidedClasses(testClass)
+          || hasMethodSuppressingStaticInitialization(testClass)) {
+        return super.createNewClassloader(
+            testClass, classesToLoadByMockClassloader, packagesToIgnore);
+      }
+
+      /*
+       * PowerMock always adds the test class itself (and its inner classes) to
+       * the classes to modify, those mustn't stop two test classes sharing.
+       */
+      final Set<String> testClassNames = testClassHierarchy(testClass);
+      final Set<String> preparedClasses = new TreeSet<String>(
+          Arrays.asList(classesToLoadByMockClassloader));
+      preparedClasses.removeAll(testClassNames);
+
+      /*
+       * Whether a class's static initializer is suppressed changes how it is
+       * rewritten, so that's part of the key too. Only the test class's own
+       * annotations count: MockRepository's suppressed set is never cleared,
+       * so it holds every earlier test class's suppressions as well.
+       */
+      final Set<String> suppressedClasses = new TreeSet<String>(
+          Arrays.asList(suppressionExtractor.getTestClasses(testClass)));
+
+      final String key = key(preparedClasses, suppressedClasses, packagesToIgnore);
+      final ClassLoader cached = CLASS_LOADERS.get(key);
+      if (cached != null) {
+        return shareWith(cached, testClass, testClassNames, suppressedClasses);
+      }
+
+      final ClassLoader created = super.createNewClassloader(
+          testClass, classesToLoadByMockClassloader, packagesToIgnore);
+      definePreInstrumentedClasses((MockClassLoader) created, testClass,
+          Arrays.asList(classesToLoadByMockClassloader), suppressedClasses);
+
+      final ClassLoader raced = CLASS_LOADERS.putIfAbsent(key, created);
+      if (raced != null) {
+        return shareWith(raced, testClass, testClassNames, suppressedClasses);
+      }
+      return created;
+    }
+
+    /*
+     * Those tests get a classloader of their own from PowerMock, with
+     * suppressions this runner can't see from the test class.
+     */
+    private static boolean hasMethodSuppressingStaticInitialization(final Class<?> testClass) {
+      for (final Method method : testClass.getMethods()) {
+        if (method.isAnnotationPresent(SuppressStaticInitializationFor.class)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static ClassLoader shareWith(final ClassLoader classLoader,
+        final Class<?> testClass, final Set<String> testClassNames,
+        final Set<String> suppressedClasses) {
+      ((MockClassLoader) classLoader).addClassesToModify(
+          testClassNames.toArray(new String[testClassNames.size()]));
+      definePreInstrumentedClasses((MockClassLoader) classLoader, testClass, testClassNames,
+          suppressedClasses);
+      return classLoader;
+    }
+
+    /*
+     * Defines the classes instrumented at build time straight into the
+     * classloader, if a directory of those was given. Anything else is still
+     * rewritten by PowerMock when it's loaded.
+     */
+    private static void definePreInstrumentedClasses(final MockClassLoader classLoader,
+        final Class<?> testClass, final Collection<String> classNames,
+        final Set<String> suppressedClasses) {
+      final String directory = System.getProperty(PRE_INSTRUMENTED_CLASSES_PROPERTY);
+      if (directory == null) {
+        return;
+      }
+
+      try {
+        PreInstrumentedClasses.defineIn(classLoader, new File(directory), classNames,
+            suppressedClasses, testClass.getClassLoader());
+      } catch (final IOException e) {
+        throw new IllegalStateException("Couldn't read the pre-instrumented classes in "
+            + directory, e);
+      }
+    }
+
+    /*
+     * PowerMock's transformer asks the MockRepository whether to suppress a
+     * class's static initializer as it's loaded, and every test class adds to
+     * that for good. So the classes these tests prepare without suppressing
+     * are taken back out before they're loaded.
+     */
+    void forgetOtherSuppressions() {
+      for (final Class<?> testClass : getTestClasses()) {
+        final Set<String> suppressed =
+            new HashSet<String>(Arrays.asList(suppressionExtractor.getTestClasses(testClass)));
+        for (final String className : prepareForTestExtractor.getTestClasses(testClass)) {
+          if (!suppressed.contains(className)) {
+            MockRepository.removeSuppressStaticInitializer(className);
+          }
+        }
+      }
+    }
+
+    /*
+     * Puts the non-final static fields of the classes whose static
+     * initialization is suppressed back to their default values.
+     */
+    void resetSuppressedStaticState(final ClassLoader classLoader) {
+      for (final Class<?> testClass : getTestClasses()) {
+        for (final String className : suppressionExtractor.getTestClasses(testClass)) {
+          if (className.endsWith("*")) {
+            continue; // wildcards, can't tell which classes they cover
+          }
+
+          try {
+            resetStaticFields(Class.forName(className, false, classLoader));
+          } catch (final ClassNotFoundException e) {
+            // never loaded, nothing to reset
+          }
+        }
+      }
+    }
+
+    private static void resetStaticFields(final Class<?> clazz) {
+      for (final Field field : clazz.getDeclaredFields()) {
+        final int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+          continue;
+        }
+
+        final Object defaultValue = field.getType().isPrimitive()
+            ? Array.get(Array.newInstance(field.getType(), 1), 0)
+            : null;
+        try {
+          field.setAccessible(true);
+          field.set(null, defaultValue);
+        } catch (final IllegalAccessException e) {
+          throw new IllegalStateException("Couldn't reset " + field, e);
+        }
+      }
+    }
+
+    /*
+     * The same classes PowerMock's PrepareForTestExtractorImpl adds for the
+     * test class.
+     */
+    private static Set<String> testClassHierarchy(final Class<?> testClass) {
+      final Set<String> names = new HashSet<String>();
+      for (Class<?> clazz = testClass;
+          clazz != null && !clazz.equals(Object.class);
+          clazz = clazz.getSuperclass()) {
+        names.add(clazz.getName());
+        for (final Class<?> innerClass : clazz.getDeclaredClasses()) {
+          names.add(innerClass.getName());
+        }
+      }
+      return names;
+    }
+
+    private static String key(final Set<String> preparedClasses,
+        final Set<String> suppressedClasses, final String[] packagesToIgnore) {
+      final Set<String> packages = new TreeSet<String>();
+      if (packagesToIgnore != null) {
+        packages.addAll(Arrays.asList(packagesToIgnore));
+      }
+
+      return preparedClasses.toString() + suppressedClasses.toString()
+          + packages.toString();
+    }
+  }
+}
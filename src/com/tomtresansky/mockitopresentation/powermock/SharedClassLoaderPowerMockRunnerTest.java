@@ -0,0 +1,150 @@
+package com.tomtresansky.mockitopresentation.powermock;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+
+/*
+ * A final class, with static state set up by a static initializer.
+ */
+final class Ledger {
+  static String lastEntry;
+
+  static {
+    lastEntry = "opening balance";
+  }
+
+  public final int balance() {
+    return 0;
+  }
+}
+
+/*
+ * Another final class.
+ */
+final class Auditor {
+  public final boolean approve(final Ledger ledger) {
+    return true;
+  }
+}
+
+public class SharedClassLoaderPowerMockRunnerTest {
+  /*
+   * Two test classes preparing exactly the same classes...
+   */
+  @RunWith(SharedClassLoaderPowerMockRunner.class)
+  @PrepareForTest(Ledger.class)
+  @SuppressStaticInitializationFor("com.tomtresansky.mockitopresentation.powermock.Ledger")
+  public static class FirstLedgerTest {
+    @Test
+    public void testLedger() {
+      // Static initializer was suppressed, and nobody else has been here
+      assertNull(Ledger.lastEntry);
+      Ledger.lastEntry = "first";
+
+      final Ledger mockLedger = PowerMockito.mock(Ledger.class);
+      when(mockLedger.balance()).thenReturn(100);
+      assertEquals(100, mockLedger.balance());
+    }
+  }
+
+  @RunWith(SharedClassLoaderPowerMockRunner.class)
+  @PrepareForTest(Ledger.class)
+  @SuppressStaticInitializationFor("com.tomtresansky.mockitopresentation.powermock.Ledger")
+  public static class SecondLedgerTest {
+    @Test
+    public void testLedger() {
+      // Shared classloader, but the static state was reset after the first
+      assertNull(Ledger.lastEntry);
+      Ledger.lastEntry = "second";
+
+      final Ledger mockLedger = PowerMockito.mock(Ledger.class);
+      when(mockLedger.balance()).thenReturn(200);
+      assertEquals(200, mockLedger.balance());
+    }
+  }
+
+  /*
+   * ...one preparing the same class, but leaving its static initializer be...
+   */
+  @RunWith(SharedClassLoaderPowerMockRunner.class)
+  @PrepareForTest(Ledger.class)
+  public static class UnsuppressedLedgerTest {
+    @Test
+    public void testLedger() {
+      assertEquals("opening balance", Ledger.lastEntry);
+    }
+  }
+
+  /*
+   * ...and one preparing something else.
+   */
+  @RunWith(SharedClassLoaderPowerMockRunner.class)
+  @PrepareForTest(Auditor.class)
+  public static class AuditorTest {
+    @Test
+    public void testLedger() {
+      // Own classloader, where the Ledger static initializer isn't suppressed
+      assertEquals("opening balance", Ledger.lastEntry);
+    }
+  }
+
+  @Test
+  public void testIdenticalPreparedClassesShareClassLoader() throws Exception {
+    final SharedClassLoaderPowerMockRunner first =
+        new SharedClassLoaderPowerMockRunner(FirstLedgerTest.class);
+    final SharedClassLoaderPowerMockRunner second =
+        new SharedClassLoaderPowerMockRunner(SecondLedgerTest.class);
+
+    assertEquals(first.getClassLoaders(), second.getClassLoaders());
+
+    assertSuccessful(first);
+    assertSuccessful(second);
+  }
+
+  @Test
+  public void testDifferentPreparedClassesGetOwnClassLoader() throws Exception {
+    final SharedClassLoaderPowerMockRunner prepared =
+        new SharedClassLoaderPowerMockRunner(FirstLedgerTest.class);
+    final SharedClassLoaderPowerMockRunner auditor =
+        new SharedClassLoaderPowerMockRunner(AuditorTest.class);
+
+    assertFalse(prepared.getClassLoaders().equals(auditor.getClassLoaders()));
+
+    assertSuccessful(prepared);
+    assertSuccessful(auditor);
+  }
+
+  @Test
+  public void testSuppressionsOfOtherClassesDoNotChangeTheKey() throws Exception {
+    // PowerMock remembers Ledger's suppression for good once this is built
+    final SharedClassLoaderPowerMockRunner suppressed =
+        new SharedClassLoaderPowerMockRunner(FirstLedgerTest.class);
+    final SharedClassLoaderPowerMockRunner unsuppressed =
+        new SharedClassLoaderPowerMockRunner(UnsuppressedLedgerTest.class);
+
+    assertFalse(suppressed.getClassLoaders().equals(unsuppressed.getClassLoaders()));
+    assertEquals(unsuppressed.getClassLoaders(),
+        new SharedClassLoaderPowerMockRunner(UnsuppressedLedgerTest.class).getClassLoaders());
+    assertSuccessful(unsuppressed);
+  }
+
+  private static void assertSuccessful(final Runner runner) {
+    final Result result = new Result();
+    final RunNotifier notifier = new RunNotifier();
+    notifier.addListener(result.createListener());
+
+    runner.run(notifier);
+
+    assertEquals(result.getFailures().toString(), 0, result.getFailureCount());
+    assertEquals(1, result.getRunCount());
+  }
+}
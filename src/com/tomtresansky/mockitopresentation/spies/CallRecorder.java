@@ -0,0 +1,183 @@
+package com.tomtresansky.mockitopresentation.spies;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * The record of calls for a hand written spy, safe to use from many threads
+ * at once.
+ *
+ * Recording a call doesn't allocate or lock: the method names are turned into
+ * int ids up front, and each call claims the next slot of a preallocated ring
+ * buffer with a single atomic increment, then stores the method id and
+ * argument there. Once the buffer is full the oldest calls are overwritten,
+ * so size it for the calls a test looks at - getCalls() refuses to hand back
+ * a record with calls missing (getDroppedCount() says how many), only
+ * getLatestCalls() settles for the newest ones.
+ *
+ *   private final CallRecorder<Person> calls = new CallRecorder<Person>(1024,
+ *       "measureTemperature", "isInfected");
+ *   private final int measureTemperature = calls.methodId("measureTemperature");
+ *   ...
+ *   calls.record(measureTemperature, p);
+ *
+ * getCalls() copies the buffer into a list of calls, in the order they were
+ * made. A call still being recorded on another thread ends the list, so it's
+ * never missing one call from the middle - it's exactly the calls up to some
+ * point in time, minus any overwritten ones at the start. The one thing that
+ * can still go wrong is a thread stalled in record() for a whole trip round
+ * the buffer, which could leave its slot holding the other thread's argument.
+ */
+public final class CallRecorder<A> {
+  private static final int WRITING = 0;
+
+  private final String[] methods;
+  private final Map<String, Integer> methodIds = new HashMap<String, Integer>();
+
+  private final int mask;
+  private final AtomicIntegerArray methodIdsBySlot;
+  private final AtomicReferenceArray<A> argsBySlot;
+
+  /*
+   * Per slot: sequence number + 1 of the call stored there, or WRITING.
+   */
+  private final AtomicLongArray stamps;
+
+  private final AtomicLong nextSequence = new AtomicLong();
+
+  public CallRecorder(final int capacity, final String... methods) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+
+    this.methods = methods.clone();
+    for (int id = 0; id < methods.length; id++) {
+      methodIds.put(methods[id], id);
+    }
+
+    mask = capacity - 1;
+    methodIdsBySlot = new AtomicIntegerArray(capacity);
+    argsBySlot = new AtomicReferenceArray<A>(capacity);
+    stamps = new AtomicLongArray(capacity);
+  }
+
+  public int methodId(final String method) {
+    final Integer id = methodIds.get(method);
+    if (id == null) {
+      throw new IllegalArgumentException("Not a recorded method: " + method);
+    }
+    return id;
+  }
+
+  public void record(final int methodId, final A arg) {
+    final long sequence = nextSequence.getAndIncrement();
+    final int slot = (int) sequence & mask;
+
+    stamps.set(slot, WRITING);
+    methodIdsBySlot.lazySet(slot, methodId);
+    argsBySlot.lazySet(slot, arg);
+    stamps.lazySet(slot, sequence + 1);
+  }
+
+  /*
+   * Number of calls recorded, including any since overwritten.
+   */
+  public long getRecordedCount() {
+    return nextSequence.get();
+  }
+
+  /*
+   * Number of calls overwritten by newer ones, because there were more than
+   * the capacity.
+   */
+  public long getDroppedCount() {
+    return Math.max(0, nextSequence.get() - (mask + 1));
+  }
+
+  /*
+   * A snapshot of every call, oldest first. Throws an IllegalStateException
+   * if some have been overwritten, as checking what's left would be wrong.
+   */
+  public List<Call<A>> getCalls() {
+    final List<Call<A>> calls = snapshot();
+    final long dropped = calls.isEmpty() ? getDroppedCount() : calls.get(0).getSequence();
+    if (dropped > 0) {
+      throw new IllegalStateException(dropped + " calls were dropped, only "
+          + (mask + 1) + " are kept - record fewer or give the recorder more capacity");
+    }
+    return calls;
+  }
+
+  /*
+   * A snapshot of the newest calls, oldest first, settling for whatever
+   * hasn't been overwritten.
+   */
+  public List<Call<A>> getLatestCalls() {
+    return snapshot();
+  }
+
+  private List<Call<A>> snapshot() {
+    final long end = nextSequence.get();
+    final List<Call<A>> calls = new ArrayList<Call<A>>();
+    for (long sequence = Math.max(0, end - (mask + 1)); sequence < end; sequence++) {
+      final int slot = (int) sequence & mask;
+
+      final long stampBefore = stamps.get(slot);
+      final int methodId = methodIdsBySlot.get(slot);
+      final A arg = argsBySlot.get(slot);
+      final long stampAfter = stamps.get(slot);
+
+      if (stampBefore == sequence + 1 && stampAfter == stampBefore) {
+        calls.add(new Call<A>(sequence, methods[methodId], arg));
+      } else if (stampBefore > sequence + 1 || stampAfter > sequence + 1) {
+        // overwritten by a newer call since we started, it's gone
+        calls.clear();
+      } else {
+        break; // still being recorded
+      }
+    }
+    return Collections.unmodifiableList(calls);
+  }
+
+  /*
+   * A call is a method and an arg.
+   */
+  public static final class Call<A> {
+    private final long sequence;
+    private final String method;
+    private final A arg;
+
+    Call(final long sequence, final String method, final A arg) {
+      this.sequence = sequence;
+      this.method = method;
+      this.arg = arg;
+    }
+
+    /*
+     * Position of the call among all the calls recorded, starting at 0.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public A getArg() {
+      return arg;
+    }
+
+    @Override
+    public String toString() {
+      return method + "(" + arg + ")";
+    }
+  }
+}
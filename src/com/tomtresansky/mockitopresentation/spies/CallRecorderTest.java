@@ -0,0 +1,114 @@
+package com.tomtresansky.mockitopresentation.spies;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.tomtresansky.mockitopresentation.spies.CallRecorder.Call;
+
+public class CallRecorderTest {
+  @Test
+  public void testRecordsCallsInOrder() {
+    final CallRecorder<String> calls = new CallRecorder<String>(8, "ship", "stock");
+    calls.record(calls.methodId("stock"), "hat");
+    calls.record(calls.methodId("ship"), "hat");
+    calls.record(calls.methodId("stock"), "glove");
+
+    final List<Call<String>> recorded = calls.getCalls();
+    assertEquals("[stock(hat), ship(hat), stock(glove)]", recorded.toString());
+    assertEquals(2, recorded.get(2).getSequence());
+  }
+
+  @Test
+  public void testKeepsTheNewestCallsWhenFull() {
+    final CallRecorder<Integer> calls = new CallRecorder<Integer>(4, "measure");
+    final int measure = calls.methodId("measure");
+    for (int i = 0; i < 10; i++) {
+      calls.record(measure, i);
+    }
+
+    assertEquals(10, calls.getRecordedCount());
+    assertEquals(6, calls.getDroppedCount());
+    assertEquals("[measure(6), measure(7), measure(8), measure(9)]",
+        calls.getLatestCalls().toString());
+  }
+
+  @Test
+  public void testAllCallsAreNotHandedBackWhenSomeWereDropped() {
+    final CallRecorder<Integer> calls = new CallRecorder<Integer>(4, "measure");
+    final int measure = calls.methodId("measure");
+    for (int i = 0; i < 4; i++) {
+      calls.record(measure, i);
+    }
+    assertEquals(0, calls.getDroppedCount());
+    assertEquals(4, calls.getCalls().size());
+
+    calls.record(measure, 4);
+    try {
+      calls.getCalls();
+      fail();
+    } catch (final IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("1 calls were dropped"));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMethod() {
+    new CallRecorder<String>(4, "ship").methodId("stock");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCapacityMustBeAPowerOfTwo() {
+    new CallRecorder<String>(1000, "ship");
+  }
+
+  @Test
+  public void testRecordingFromManyThreads() throws Exception {
+    final int threads = 8;
+    final int callsPerThread = 1024;
+    final CallRecorder<Integer> calls =
+        new CallRecorder<Integer>(threads * callsPerThread, "measure", "isBreathing");
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final CountDownLatch start = new CountDownLatch(1);
+    for (int thread = 0; thread < threads; thread++) {
+      final int methodId = thread % 2;
+      final Integer arg = thread;
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          for (int i = 0; i < callsPerThread; i++) {
+            calls.record(methodId, arg);
+          }
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    final List<Call<Integer>> recorded = calls.getCalls();
+    assertEquals(threads * callsPerThread, recorded.size());
+    final int[] perThread = new int[threads];
+    for (final Call<Integer> call : recorded) {
+      // method and arg always come from the same call
+      assertEquals(call.getArg() % 2 == 0 ? "measure" : "isBreathing", call.getMethod());
+      perThread[call.getArg()]++;
+    }
+    for (final int count : perThread) {
+      assertEquals(callsPerThread, count);
+    }
+  }
+}
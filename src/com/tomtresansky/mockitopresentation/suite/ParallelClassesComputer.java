@@ -0,0 +1,158 @@
+package com.tomtresansky.mockitopresentation.suite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.runner.Computer;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.Filterable;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sortable;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+import org.mockito.internal.progress.ThreadSafeMockingProgress;
+import org.powermock.modules.junit4.common.internal.impl.AbstractCommonPowerMockRunner;
+
+import com.tomtresansky.mockitopresentation.powermock.SharedClassLoaderPowerMockRunner;
+
+/*
+ * A JUnit Computer which runs whole test classes concurrently on a fixed pool
+ * of worker threads (test methods within a class still run one after another,
+ * on the same thread).
+ *
+ * Classloader isolation comes for free: PowerMockRunner already gives each of
+ * its test classes its own MockClassLoader, and plain Mockito test classes all
+ * share the normal application classloader. However PowerMock's MockRepository
+ * (where it keeps mocked static methods, suppressed constructors and so on)
+ * always lives in the application classloader, and is cleared after each
+ * test, so PowerMock test classes are run one at a time - alongside the plain
+ * Mockito classes, but never alongside each other.
+ *
+ * Mockito keeps its "mocking progress" (the stubbing/verification in flight)
+ * in a ThreadLocal. A test class which misuses the API - like InlineMocks -
+ * leaves that state behind on its thread, so it is reset after every class to
+ * stop it leaking into whichever class the worker thread picks up next.
+ */
+public final class ParallelClassesComputer extends Computer {
+  private final ExecutorService workers;
+
+  public ParallelClassesComputer(final int threads) {
+    workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "test-worker-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  @Override
+  public Runner getSuite(final RunnerBuilder builder, final Class<?>[] classes)
+      throws InitializationError {
+    final Runner suite = super.getSuite(builder, classes);
+    ((ParentRunner<?>) suite).setScheduler(new RunnerScheduler() {
+      private final List<Future<?>> scheduled = new ArrayList<Future<?>>();
+
+      @Override
+      public void schedule(final Runnable childStatement) {
+        scheduled.add(workers.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              childStatement.run();
+            } finally {
+              new ThreadSafeMockingProgress().reset();
+            }
+          }
+        }));
+      }
+
+      @Override
+      public void finished() {
+        for (final Future<?> future : scheduled) {
+          try {
+            future.get();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          } catch (final ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+          }
+        }
+      }
+    });
+    return suite;
+  }
+
+  @Override
+  protected Runner getRunner(final RunnerBuilder builder, final Class<?> testClass)
+      throws Throwable {
+    final Runner runner = super.getRunner(builder, testClass);
+    if (runner instanceof AbstractCommonPowerMockRunner
+        || runner instanceof SharedClassLoaderPowerMockRunner) {
+      return new PowerMockSerializingRunner(runner);
+    }
+    return runner;
+  }
+
+  public void shutdown() {
+    workers.shutdown();
+  }
+
+  /*
+   * Only lets one PowerMock test class run at a time. Filtering and sorting
+   * are passed on, so picking single tests out of a class still works.
+   */
+  private static final class PowerMockSerializingRunner extends Runner
+      implements Filterable, Sortable {
+    private static final Object POWERMOCK_LOCK = new Object();
+
+    private final Runner delegate;
+
+    PowerMockSerializingRunner(final Runner delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Description getDescription() {
+      return delegate.getDescription();
+    }
+
+    @Override
+    public int testCount() {
+      return delegate.testCount();
+    }
+
+    @Override
+    public void run(final RunNotifier notifier) {
+      synchronized (POWERMOCK_LOCK) {
+        delegate.run(notifier);
+      }
+    }
+
+    @Override
+    public void filter(final Filter filter) throws NoTestsRemainException {
+      filter.apply(delegate);
+    }
+
+    @Override
+    public void sort(final Sorter sorter) {
+      sorter.apply(delegate);
+    }
+  }
+}
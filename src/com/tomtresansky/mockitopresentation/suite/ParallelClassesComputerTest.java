@@ -0,0 +1,205 @@
+package com.tomtresansky.mockitopresentation.suite;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+public class ParallelClassesComputerTest {
+  /*
+   * Shared by the test classes below. PowerMock is told to leave it to the
+   * normal classloader, so its test classes see the same copy.
+   */
+  public static final class Tracker {
+    static final AtomicInteger running = new AtomicInteger();
+    static final AtomicInteger mostAtOnce = new AtomicInteger();
+    static final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    static volatile CyclicBarrier barrier;
+
+    static void reset() {
+      running.set(0);
+      mostAtOnce.set(0);
+      ran.clear();
+      barrier = null;
+    }
+
+    /*
+     * Pretends to be a slow test, noting how many were running at once.
+     */
+    static void run(final String test) throws InterruptedException {
+      ran.add(test);
+      final int atOnce = running.incrementAndGet();
+      try {
+        int most;
+        do {
+          most = mostAtOnce.get();
+        } while (atOnce > most && !mostAtOnce.compareAndSet(most, atOnce));
+        Thread.sleep(50);
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  }
+
+  @RunWith(PowerMockRunner.class)
+  @PowerMockIgnore("com.tomtresansky.mockitopresentation.suite.ParallelClassesComputerTest$Tracker")
+  public static class FirstPowerMockTest {
+    @Test
+    public void testA() throws Exception {
+      Tracker.run("first.testA");
+    }
+
+    @Test
+    public void testB() throws Exception {
+      Tracker.run("first.testB");
+    }
+  }
+
+  @RunWith(PowerMockRunner.class)
+  @PowerMockIgnore("com.tomtresansky.mockitopresentation.suite.ParallelClassesComputerTest$Tracker")
+  public static class SecondPowerMockTest {
+    @Test
+    public void testA() throws Exception {
+      Tracker.run("second.testA");
+    }
+  }
+
+  /*
+   * Only passes when another class waits at the barrier at the same time.
+   */
+  public static class FirstPlainTest {
+    @Test
+    public void testTogether() throws Exception {
+      Tracker.barrier.await(10, TimeUnit.SECONDS);
+    }
+  }
+
+  public static class SecondPlainTest {
+    @Test
+    public void testTogether() throws Exception {
+      Tracker.barrier.await(10, TimeUnit.SECONDS);
+    }
+  }
+
+  /*
+   * Leaves a stubbing unfinished on its thread.
+   */
+  public static class UnfinishedStubbingTest {
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testForgetsThenReturn() {
+      final List<String> mockList = mock(List.class);
+      when(mockList.get(0));
+    }
+  }
+
+  public static class MockingTest {
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMocks() {
+      final List<String> mockList = mock(List.class);
+      when(mockList.get(0)).thenReturn("mocked");
+      assertEquals("mocked", mockList.get(0));
+    }
+  }
+
+  private ParallelClassesComputer computer;
+
+  @Before
+  public void setup() {
+    Tracker.reset();
+  }
+
+  @After
+  public void teardown() {
+    if (computer != null) {
+      computer.shutdown();
+    }
+  }
+
+  private Result run(final int threads, final Class<?>... classes) {
+    computer = new ParallelClassesComputer(threads);
+    return new JUnitCore().run(computer, classes);
+  }
+
+  @Test
+  public void testPlainClassesRunTogether() {
+    Tracker.barrier = new CyclicBarrier(2);
+
+    final Result result = run(2, FirstPlainTest.class, SecondPlainTest.class);
+
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+  }
+
+  @Test
+  public void testPowerMockClassesRunOneAtATime() {
+    final Result result = run(2, FirstPowerMockTest.class, SecondPowerMockTest.class);
+
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+    assertEquals(3, Tracker.ran.size());
+    assertEquals(1, Tracker.mostAtOnce.get());
+  }
+
+  @Test
+  public void testMockingProgressDoesNotLeakBetweenClasses() {
+    // one thread, so the second class runs where the first left its mess
+    final Result result = run(1, UnfinishedStubbingTest.class, MockingTest.class);
+
+    assertEquals(2, result.getRunCount());
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+  }
+
+  @Test
+  public void testPowerMockClassesCanBeFiltered() {
+    computer = new ParallelClassesComputer(2);
+    final Result result = new JUnitCore().run(
+        Request.classes(computer, FirstPowerMockTest.class, SecondPowerMockTest.class)
+            .filterWith(Description.createTestDescription(FirstPowerMockTest.class, "testB")));
+
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+    assertEquals(1, result.getRunCount());
+    assertEquals(Collections.singletonList("first.testB"), Tracker.ran);
+  }
+
+  private List<String> runSorted(final boolean backwards) {
+    Tracker.reset();
+    computer = new ParallelClassesComputer(1);
+    final Result result = new JUnitCore().run(
+        Request.classes(computer, FirstPowerMockTest.class).sortWith(
+            new Comparator<Description>() {
+              @Override
+              public int compare(final Description first, final Description second) {
+                final int order = first.getDisplayName().compareTo(second.getDisplayName());
+                return backwards ? -order : order;
+              }
+            }));
+    computer.shutdown();
+
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+    return new ArrayList<String>(Tracker.ran);
+  }
+
+  @Test
+  public void testPowerMockClassesCanBeSorted() {
+    assertEquals(Arrays.asList("first.testA", "first.testB"), runSorted(false));
+    assertEquals(Arrays.asList("first.testB", "first.testA"), runSorted(true));
+  }
+}
@@ -0,0 +1,213 @@
+package com.tomtresansky.mockitopresentation.suite;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.Computer;
+import org.junit.runner.Description;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+/*
+ * Runs the example test classes one after another, then in parallel, and
+ * reports how much faster the parallel run was.
+ *
+ * With no arguments all test classes in the exampleNN packages are run,
+ * otherwise the named test classes are. The number of worker threads defaults
+ * to the number of processors, override with -Dparallel.threads=N.
+ *
+ * Note: lots of the examples fail ON PURPOSE (they demonstrate mistakes), so
+ * failures are expected here. One of them, the ActualThermometer attempt in
+ * DoctorUnitTestsWithStubs, fails at random (that's its point), so the two
+ * runs can end up a failure apart - the tests whose outcome differed are
+ * listed.
+ */
+public final class ParallelExamples {
+  private static final String EXAMPLES_PACKAGE = "com.tomtresansky.mockitopresentation";
+
+  private ParallelExamples() {
+    // only run from main
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final List<Class<?>> testClasses = new ArrayList<Class<?>>();
+    if (args.length == 0) {
+      testClasses.addAll(findExampleTestClasses());
+    } else {
+      for (final String className : args) {
+        testClasses.add(Class.forName(className));
+      }
+    }
+
+    final Class<?>[] classes = testClasses.toArray(new Class<?>[testClasses.size()]);
+    final int threads = Integer.getInteger(
+        "parallel.threads", Runtime.getRuntime().availableProcessors());
+
+    // A throwaway run first, so neither measured run pays for JIT warm up
+    run(Computer.serial(), classes, new Result());
+
+    // Once one after another, to have something to compare to...
+    final Result serialResult = new Result();
+    final long serialNanos = run(Computer.serial(), classes, serialResult);
+
+    // ...and then in parallel
+    final ParallelClassesComputer computer = new ParallelClassesComputer(threads);
+    final Result parallelResult = new Result();
+    final long parallelNanos;
+    try {
+      parallelNanos = run(computer, classes, parallelResult);
+    } finally {
+      computer.shutdown();
+    }
+
+    for (final Failure failure : parallelResult.getFailures()) {
+      System.out.println("Failed: " + failure.getTestHeader());
+    }
+    for (final String test : onlyIn(serialResult, parallelResult)) {
+      System.out.println("Failed only when run serially: " + test);
+    }
+    for (final String test : onlyIn(parallelResult, serialResult)) {
+      System.out.println("Failed only when run in parallel: " + test);
+    }
+    System.out.println(String.format(
+        "%d test classes, %d tests, %d failures (%d when run serially) on %d threads",
+        classes.length, parallelResult.getRunCount(), parallelResult.getFailureCount(),
+        serialResult.getFailureCount(), threads));
+    System.out.println(String.format(
+        "Serial: %d ms, parallel: %d ms, speedup: %.2fx",
+        TimeUnit.NANOSECONDS.toMillis(serialNanos),
+        TimeUnit.NANOSECONDS.toMillis(parallelNanos),
+        (double) serialNanos / parallelNanos));
+  }
+
+  /*
+   * Runs the test classes, returning how long it took. That includes creating
+   * the runners, which is where PowerMock sets up its classloaders.
+   */
+  private static long run(final Computer computer, final Class<?>[] classes,
+      final Result result) {
+    final RunNotifier notifier = new RunNotifier();
+    notifier.addListener(new SynchronizedRunListener(result.createListener()));
+
+    final long start = System.nanoTime();
+    Request.classes(computer, classes).getRunner().run(notifier);
+    return System.nanoTime() - start;
+  }
+
+  /*
+   * The tests which failed in one run but not in the other.
+   */
+  private static Set<String> onlyIn(final Result result, final Result other) {
+    final Set<String> failed = new TreeSet<String>();
+    for (final Failure failure : result.getFailures()) {
+      failed.add(failure.getTestHeader());
+    }
+    for (final Failure failure : other.getFailures()) {
+      failed.remove(failure.getTestHeader());
+    }
+    return failed;
+  }
+
+  /*
+   * Every class with @Test methods in an exampleNN package, found on the
+   * (directory based) classpath.
+   */
+  private static List<Class<?>> findExampleTestClasses() throws Exception {
+    final List<Class<?>> testClasses = new ArrayList<Class<?>>();
+    final String packagePath = EXAMPLES_PACKAGE.replace('.', '/');
+    final ClassLoader classLoader = ParallelExamples.class.getClassLoader();
+    final File packageDirectory = new File(URLDecoder.decode(
+        classLoader.getResource(packagePath).getPath(), "UTF-8"));
+
+    final File[] exampleDirectories = packageDirectory.listFiles();
+    for (final File exampleDirectory : exampleDirectories) {
+      if (exampleDirectory.isDirectory() && exampleDirectory.getName().startsWith("example")) {
+        findTestClasses(exampleDirectory,
+            EXAMPLES_PACKAGE + "." + exampleDirectory.getName(), testClasses);
+      }
+    }
+    return testClasses;
+  }
+
+  private static void findTestClasses(final File directory, final String packageName,
+      final List<Class<?>> testClasses) throws Exception {
+    for (final File file : directory.listFiles()) {
+      final String name = file.getName();
+      if (file.isDirectory()) {
+        findTestClasses(file, packageName + "." + name, testClasses);
+      } else if (name.endsWith(".class") && !name.contains("$")) {
+        final Class<?> clazz = Class.forName(
+            packageName + "." + name.substring(0, name.length() - ".class".length()),
+            false, ParallelExamples.class.getClassLoader());
+        if (hasTests(clazz)) {
+          testClasses.add(clazz);
+        }
+      }
+    }
+  }
+
+  private static boolean hasTests(final Class<?> clazz) {
+    for (final Method method : clazz.getMethods()) {
+      if (method.isAnnotationPresent(Test.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Listeners are called from all the worker threads at once.
+   */
+  private static final class SynchronizedRunListener extends RunListener {
+    private final RunListener delegate;
+
+    SynchronizedRunListener(final RunListener delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized void testRunStarted(final Description description) throws Exception {
+      delegate.testRunStarted(description);
+    }
+
+    @Override
+    public synchronized void testRunFinished(final Result result) throws Exception {
+      delegate.testRunFinished(result);
+    }
+
+    @Override
+    public synchronized void testStarted(final Description description) throws Exception {
+      delegate.testStarted(description);
+    }
+
+    @Override
+    public synchronized void testFinished(final Description description) throws Exception {
+      delegate.testFinished(description);
+    }
+
+    @Override
+    public synchronized void testFailure(final Failure failure) throws Exception {
+      delegate.testFailure(failure);
+    }
+
+    @Override
+    public synchronized void testAssumptionFailure(final Failure failure) {
+      delegate.testAssumptionFailure(failure);
+    }
+
+    @Override
+    public synchronized void testIgnored(final Description description) throws Exception {
+      delegate.testIgnored(description);
+    }
+  }
+}